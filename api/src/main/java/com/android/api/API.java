@@ -18,22 +18,41 @@
 package com.android.api;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import com.android.api.cache.APIDiskBitmapCache;
+import com.android.api.cache.BitmapPool;
 import com.android.api.common.APIConstants;
 import com.android.api.common.APIRequest;
 import com.android.api.common.ConnectionClassManager;
 import com.android.api.common.ConnectionQuality;
+import com.android.api.common.Priority;
+import com.android.api.core.ConcurrencyLimiter;
 import com.android.api.core.Core;
+import com.android.api.core.DecodeExecutor;
 import com.android.api.interceptors.HttpLoggingInterceptor.Level;
 import com.android.api.interfaces.ConnectionQualityChangeListener;
+import com.android.api.interfaces.DownloadListener;
 import com.android.api.interfaces.Parser;
 import com.android.api.internal.APIImageLoader;
 import com.android.api.internal.APIRequestQueue;
+import com.android.api.internal.BandwidthThrottler;
+import com.android.api.internal.CachingDns;
+import com.android.api.internal.ConnectionWarmer;
+import com.android.api.internal.DownloadManager;
+import com.android.api.internal.HedgePolicy;
 import com.android.api.internal.InternalNetworking;
+import com.android.api.internal.ProgressDispatcher;
+import com.android.api.internal.UploadCheckpoint;
+import com.android.api.model.DnsMetrics;
 import com.android.api.utils.ParseUtil;
 import com.android.api.utils.Utils;
 
+import java.io.File;
+import java.util.Arrays;
+
+import okhttp3.Dns;
 import okhttp3.OkHttpClient;
 
 /**
@@ -59,6 +78,10 @@ public class API {
         InternalNetworking.setClientWithCache(context.getApplicationContext());
         APIRequestQueue.initialize();
         APIImageLoader.initialize();
+        ConnectionWarmer.getInstance().initialize(new File(context.getCacheDir(),
+                APIConstants.HOST_HISTORY_FILE_NAME));
+        UploadCheckpoint.setDirectory(new File(context.getFilesDir(),
+                APIConstants.UPLOAD_CHECKPOINT_DIR_NAME));
     }
 
     /**
@@ -78,6 +101,104 @@ public class API {
         InternalNetworking.setClient(okHttpClient);
         APIRequestQueue.initialize();
         APIImageLoader.initialize();
+        ConnectionWarmer.getInstance().initialize(new File(context.getCacheDir(),
+                APIConstants.HOST_HISTORY_FILE_NAME));
+        UploadCheckpoint.setDirectory(new File(context.getFilesDir(),
+                APIConstants.UPLOAD_CHECKPOINT_DIR_NAME));
+    }
+
+    /**
+     * Method to open a connection to the host of the url ahead of the first request
+     *
+     * @param url The url of the host to connect to
+     */
+    public static void preconnect(String url) {
+        ConnectionWarmer.getInstance().preconnect(url, 1);
+    }
+
+    /**
+     * Method to open connections to the host of the url ahead of the first request
+     *
+     * @param url         The url of the host to connect to
+     * @param connections The number of connections to open
+     */
+    public static void preconnect(String url, int connections) {
+        ConnectionWarmer.getInstance().preconnect(url, connections);
+    }
+
+    /**
+     * Method to open connections to the most used hosts of the previous session
+     *
+     * @param maxHosts The maximum number of hosts to connect to
+     */
+    public static void preconnectPreviousHosts(int maxHosts) {
+        ConnectionWarmer.getInstance().preconnectPreviousHosts(maxHosts);
+    }
+
+    /**
+     * Method to cache DNS answers for the current client, answers are dropped when the
+     * network changes or a connection to the cached addresses fails
+     *
+     * @param context The context
+     */
+    public static void enableDnsCache(Context context) {
+        InternalNetworking.enableDnsCache();
+        CachingDns.getInstance().registerConnectivityReceiver(context);
+    }
+
+    /**
+     * Method to set the resolver behind the DNS cache enabled by enableDnsCache
+     *
+     * @param dns The resolver used on cache misses and refreshes
+     */
+    public static void setDnsResolver(Dns dns) {
+        CachingDns.getInstance().setDelegate(dns);
+    }
+
+    /**
+     * Method to set how long DNS answers are cached and served stale while refreshing
+     *
+     * @param ttlMillis      The time an answer is used without a refresh
+     * @param maxStaleMillis The time an expired answer is still served while refreshing
+     */
+    public static void setDnsCacheTtl(long ttlMillis, long maxStaleMillis) {
+        CachingDns.getInstance().setTtl(ttlMillis, maxStaleMillis);
+    }
+
+    /**
+     * Method to resolve hostnames in the background ahead of their first use
+     *
+     * @param hostnames The hostnames to resolve
+     */
+    public static void prefetchDns(String... hostnames) {
+        CachingDns.getInstance().prefetch(Arrays.asList(hostnames));
+    }
+
+    /**
+     * Method to get the hit, miss and latency metrics of the DNS cache
+     *
+     * @return The DNS cache metrics
+     */
+    public static DnsMetrics getDnsMetrics() {
+        return CachingDns.getInstance().getMetrics();
+    }
+
+    /**
+     * Method to set the maximum number of concurrent requests to a single host
+     *
+     * @param maxRequestsPerHost The limit per host, 0 for no limit
+     */
+    public static void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        Core.getInstance().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * Method to set the share of extra requests hedged GET requests may add
+     *
+     * @param budgetRatio The ratio of hedges to hedge-enabled requests, 0.05 by default
+     */
+    public static void setHedgeBudget(float budgetRatio) {
+        HedgePolicy.setBudgetRatio(budgetRatio);
     }
 
     /**
@@ -91,6 +212,93 @@ public class API {
         }
     }
 
+    /**
+     * Method to set the concurrencyLimiter which resizes the network thread pool at runtime
+     * from the observed time to response headers, bandwidth and queue depth. No limiter is
+     * installed by default; pass an AIMDConcurrencyLimiter to opt in, or null to keep the
+     * current pool size fixed.
+     *
+     * @param concurrencyLimiter The concurrencyLimiter
+     */
+    public static void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        Core.getInstance().setConcurrencyLimiter(concurrencyLimiter);
+    }
+
+    /**
+     * Method to set how often upload and download progress is posted to the main thread
+     * The final progress event is always delivered
+     *
+     * @param minIntervalMillis The minimum time between two progress events
+     * @param minBytesDelta     The bytes transferred that also trigger an event, 0 to disable
+     */
+    public static void setProgressDispatchThreshold(long minIntervalMillis, long minBytesDelta) {
+        ProgressDispatcher.setThreshold(minIntervalMillis, minBytesDelta);
+    }
+
+    /**
+     * Method to cap the bandwidth used by all requests together
+     *
+     * @param maxBytesPerSecond The maximum rate in bytes per second, 0 to disable
+     */
+    public static void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        BandwidthThrottler.setMaxBytesPerSecond(maxBytesPerSecond);
+    }
+
+    /**
+     * Method to cap the bandwidth used by requests of the given priority
+     *
+     * @param priority          The priority
+     * @param maxBytesPerSecond The maximum rate in bytes per second, 0 to disable
+     */
+    public static void setMaxBytesPerSecond(Priority priority, long maxBytesPerSecond) {
+        BandwidthThrottler.setMaxBytesPerSecond(priority, maxBytesPerSecond);
+    }
+
+    /**
+     * Method to cap requests of the given priority to a fraction of the measured bandwidth
+     *
+     * @param priority The priority
+     * @param fraction The fraction of the current bandwidth, e.g. 0.2f, 0 to disable
+     */
+    public static void setBandwidthFraction(Priority priority, float fraction) {
+        BandwidthThrottler.setBandwidthFraction(priority, fraction);
+    }
+
+    /**
+     * Method to set the limits of the bitmap decode stage
+     *
+     * @param maxConcurrentDecodes The number of bitmaps decoded in parallel
+     * @param maxInFlightBytes     The budget in bytes for pixels of bitmaps being decoded
+     */
+    public static void setBitmapDecodeLimits(int maxConcurrentDecodes, long maxInFlightBytes) {
+        final DecodeExecutor decodeExecutor = Core.getInstance().getExecutorSupplier().forDecodeTasks();
+        decodeExecutor.setThreadCount(maxConcurrentDecodes);
+        decodeExecutor.setMaxInFlightBytes(maxInFlightBytes);
+    }
+
+    /**
+     * Method to enable reuse of released bitmaps as inBitmap for new decodes.
+     * Only bitmaps passed to releaseBitmap are pooled. Requires KitKat or above.
+     *
+     * @param maxSize The maximum size of the pool in bytes
+     */
+    public static void enableBitmapPool(long maxSize) {
+        if (BitmapPool.isSupported()) {
+            APIImageLoader.getInstance().setBitmapPool(new BitmapPool(maxSize));
+        }
+    }
+
+    /**
+     * Method to hand a bitmap back to the bitmap pool so later decodes can reuse its memory.
+     * Only release a bitmap that is no longer drawn or held in the image cache. Immutable
+     * bitmaps are ignored.
+     *
+     * @param bitmap The bitmap that is no longer used
+     */
+    public static void releaseBitmap(Bitmap bitmap) {
+        APIImageLoader.getInstance().releaseBitmap(bitmap);
+    }
+
     /**
      * Method to set connectionQualityChangeListener
      *
@@ -189,6 +397,54 @@ public class API {
         return new APIRequest.DownloadBuilder(url, dirPath, fileName);
     }
 
+    /**
+     * Method to initialize the DownloadManager, downloads left in its journal are restarted
+     *
+     * @param context The context
+     */
+    public static void initializeDownloadManager(Context context) {
+        DownloadManager.getInstance().initialize(new File(context.getFilesDir(),
+                APIConstants.DOWNLOAD_JOURNAL_FILE_NAME));
+    }
+
+    /**
+     * Method to enqueue a download request in the DownloadManager, headers such as Authorization are
+     * not written to its journal so a download restored with them left out waits until it is enqueued again
+     *
+     * @param request          The download request
+     * @param downloadListener The downloadListener
+     */
+    public static void enqueueDownload(APIRequest request, DownloadListener downloadListener) {
+        DownloadManager.getInstance().enqueue(request, downloadListener);
+    }
+
+    /**
+     * Method to pause downloads of the DownloadManager with the given tag
+     *
+     * @param tag The tag with which downloads were enqueued
+     */
+    public static void pauseDownloads(Object tag) {
+        DownloadManager.getInstance().pause(tag);
+    }
+
+    /**
+     * Method to resume downloads of the DownloadManager with the given tag, failed ones are retried
+     *
+     * @param tag The tag with which downloads were enqueued
+     */
+    public static void resumeDownloads(Object tag) {
+        DownloadManager.getInstance().resume(tag);
+    }
+
+    /**
+     * Method to cancel downloads of the DownloadManager with the given tag and delete their partial files
+     *
+     * @param tag The tag with which downloads were enqueued
+     */
+    public static void cancelDownloads(Object tag) {
+        DownloadManager.getInstance().cancel(tag);
+    }
+
     /**
      * Method to make upload request
      *
@@ -242,6 +498,18 @@ public class API {
         APIRequestQueue.getInstance().cancelAll(true);
     }
 
+    /**
+     * Method to enable or disable request coalescing. When enabled, identical GET and HEAD
+     * requests (same url, headers and response type) made while one is already in flight
+     * are attached to it and receive the same parsed response instead of hitting the network.
+     * Parsed results such as JSONObject are shared between listeners and should not be mutated.
+     *
+     * @param enabled Whether identical in-flight requests are coalesced
+     */
+    public static void setRequestCoalescingEnabled(boolean enabled) {
+        APIRequestQueue.getInstance().setRequestCoalescingEnabled(enabled);
+    }
+
     /**
      * Method to enable logging
      */
@@ -259,7 +527,21 @@ public class API {
     }
 
     /**
-     * Method to evict a bitmap with given key from APICache
+     * Method to enable a disk cache for downsampled bitmaps behind the memory APICache.
+     * Bitmaps evicted from memory or lost on process restart are then decoded from disk
+     * instead of being fetched and resampled again.
+     *
+     * @param context The context
+     * @param maxSize The maximum size of the disk cache in bytes
+     */
+    public static void enableDiskBitmapCache(Context context, long maxSize) {
+        APIImageLoader.getInstance().setDiskImageCache(new APIDiskBitmapCache(
+                Utils.getDiskCacheDir(context.getApplicationContext(),
+                        APIConstants.IMAGE_CACHE_DIR_NAME), maxSize));
+    }
+
+    /**
+     * Method to evict a bitmap with given key from APICache and the disk cache
      *
      * @param key The key of the bitmap
      */
@@ -268,12 +550,24 @@ public class API {
         if (imageCache != null && key != null) {
             imageCache.evictBitmap(key);
         }
+        final APIImageLoader.ImageCache diskImageCache = APIImageLoader.getInstance().getDiskImageCache();
+        if (diskImageCache != null && key != null) {
+            diskImageCache.evictBitmap(key);
+        }
     }
 
     /**
-     * Method to clear APICache
+     * Method to clear APICache and the disk cache
      */
     public static void evictAllBitmap() {
+        evictAllMemoryBitmap();
+        final APIImageLoader.ImageCache diskImageCache = APIImageLoader.getInstance().getDiskImageCache();
+        if (diskImageCache != null) {
+            diskImageCache.evictAllBitmap();
+        }
+    }
+
+    private static void evictAllMemoryBitmap() {
         final APIImageLoader.ImageCache imageCache = APIImageLoader.getInstance().getImageCache();
         if (imageCache != null) {
             imageCache.evictAllBitmap();
@@ -330,8 +624,9 @@ public class API {
      * Shuts API down
      */
     public static void shutDown() {
+        ConnectionWarmer.getInstance().flush();
         Core.shutDown();
-        evictAllBitmap();
+        evictAllMemoryBitmap();
         ConnectionClassManager.getInstance().removeListener();
         ConnectionClassManager.shutDown();
         ParseUtil.shutDown();
@@ -19,37 +19,55 @@ package com.android.api.cache;
 
 import android.annotation.SuppressLint;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class APICache<K, V> {
-    private final LinkedHashMap<K, V> map;
 
-    private int size;
-    private int maxSize;
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
 
-    private int putCount;
-    private int createCount;
-    private int evictionCount;
-    private int hitCount;
-    private int missCount;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicReferenceArray<Node<K, V>> readBuffer =
+            new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+    private final AtomicLong readBufferWriteCount = new AtomicLong();
+    private volatile long readBufferReadCount;
+
+    // Access order list, least recently used at the head. Guarded by evictionLock.
+    private Node<K, V> head;
+    private Node<K, V> tail;
+
+    private volatile int size;
+    private volatile int maxSize;
+
+    private volatile int putCount;
+    private volatile int createCount;
+    private volatile int evictionCount;
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
 
     public APICache(int maxSize) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
         this.maxSize = maxSize;
-        this.map = new LinkedHashMap<K, V>(0, 0.75f, true);
+        this.map = new ConcurrentHashMap<K, Node<K, V>>();
     }
 
     public void resize(int maxSize) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
-
-        synchronized (this) {
-            this.maxSize = maxSize;
-        }
+        this.maxSize = maxSize;
         trimToSize(maxSize);
     }
 
@@ -58,31 +76,37 @@ public class APICache<K, V> {
             throw new NullPointerException("key == null");
         }
 
-        V mapValue;
-        synchronized (this) {
-            mapValue = map.get(key);
-            if (mapValue != null) {
-                hitCount++;
-                return mapValue;
-            }
-            missCount++;
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            hitCount.incrementAndGet();
+            recordRead(node);
+            return node.value;
         }
+        missCount.incrementAndGet();
 
         V createdValue = create(key);
         if (createdValue == null) {
             return null;
         }
 
-        synchronized (this) {
+        V mapValue = null;
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
             createCount++;
-            mapValue = map.put(key, createdValue);
-
-            if (mapValue != null) {
-                // There was a conflict so undo that last put
-                map.put(key, mapValue);
+            node = map.get(key);
+            if (node != null) {
+                // There was a conflict so keep the value already in the cache
+                mapValue = node.value;
+                moveToTail(node);
             } else {
-                size += safeSizeOf(key, createdValue);
+                node = new Node<K, V>(key, createdValue, safeSizeOf(key, createdValue));
+                map.put(key, node);
+                linkLast(node);
+                size += node.size;
             }
+        } finally {
+            evictionLock.unlock();
         }
 
         if (mapValue != null) {
@@ -99,14 +123,22 @@ public class APICache<K, V> {
             throw new NullPointerException("key == null || value == null");
         }
 
-        V previous;
-        synchronized (this) {
+        V previous = null;
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
             putCount++;
-            size += safeSizeOf(key, value);
-            previous = map.put(key, value);
-            if (previous != null) {
-                size -= safeSizeOf(key, previous);
+            Node<K, V> node = new Node<K, V>(key, value, safeSizeOf(key, value));
+            Node<K, V> previousNode = map.put(key, node);
+            if (previousNode != null) {
+                unlink(previousNode);
+                size -= previousNode.size;
+                previous = previousNode.value;
             }
+            linkLast(node);
+            size += node.size;
+        } finally {
+            evictionLock.unlock();
         }
 
         if (previous != null) {
@@ -118,28 +150,38 @@ public class APICache<K, V> {
     }
 
     public void trimToSize(int maxSize) {
-        while (true) {
-            K key;
-            V value;
-            synchronized (this) {
+        List<Node<K, V>> evicted = null;
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            while (true) {
                 if (size < 0 || (map.isEmpty() && size != 0)) {
                     throw new IllegalStateException(getClass().getName()
                             + ".sizeOf() is reporting inconsistent results!");
                 }
 
-                if (size <= maxSize || map.isEmpty()) {
+                if (size <= maxSize || head == null) {
                     break;
                 }
 
-                Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
-                key = toEvict.getKey();
-                value = toEvict.getValue();
-                map.remove(key);
-                size -= safeSizeOf(key, value);
+                Node<K, V> toEvict = head;
+                map.remove(toEvict.key, toEvict);
+                unlink(toEvict);
+                size -= toEvict.size;
                 evictionCount++;
+                if (evicted == null) {
+                    evicted = new ArrayList<Node<K, V>>();
+                }
+                evicted.add(toEvict);
             }
+        } finally {
+            evictionLock.unlock();
+        }
 
-            entryRemoved(true, key, value, null);
+        if (evicted != null) {
+            for (Node<K, V> node : evicted) {
+                entryRemoved(true, node.key, node.value, null);
+            }
         }
     }
 
@@ -148,12 +190,17 @@ public class APICache<K, V> {
             throw new NullPointerException("key == null");
         }
 
-        V previous;
-        synchronized (this) {
-            previous = map.remove(key);
-            if (previous != null) {
-                size -= safeSizeOf(key, previous);
+        V previous = null;
+        evictionLock.lock();
+        try {
+            Node<K, V> node = map.remove(key);
+            if (node != null) {
+                unlink(node);
+                size -= node.size;
+                previous = node.value;
             }
+        } finally {
+            evictionLock.unlock();
         }
 
         if (previous != null) {
@@ -186,44 +233,136 @@ public class APICache<K, V> {
         trimToSize(-1);
     }
 
-    public synchronized final int size() {
+    public final int size() {
         return size;
     }
 
-    public synchronized final int maxSize() {
+    public final int maxSize() {
         return maxSize;
     }
 
-    public synchronized final int hitCount() {
-        return hitCount;
+    public final int hitCount() {
+        return hitCount.get();
     }
 
-    public synchronized final int missCount() {
-        return missCount;
+    public final int missCount() {
+        return missCount.get();
     }
 
-    public synchronized final int createCount() {
+    public final int createCount() {
         return createCount;
     }
 
-    public synchronized final int putCount() {
+    public final int putCount() {
         return putCount;
     }
 
-    public synchronized final int evictionCount() {
+    public final int evictionCount() {
         return evictionCount;
     }
 
-    public synchronized final Map<K, V> snapshot() {
-        return new LinkedHashMap<K, V>(map);
+    public final Map<K, V> snapshot() {
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            LinkedHashMap<K, V> snapshot = new LinkedHashMap<K, V>();
+            for (Node<K, V> node = head; node != null; node = node.next) {
+                snapshot.put(node.key, node.value);
+            }
+            return snapshot;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void recordRead(Node<K, V> node) {
+        final long writeCount = readBufferWriteCount.getAndIncrement();
+        readBuffer.lazySet((int) (writeCount & READ_BUFFER_MASK), node);
+        if (writeCount - readBufferReadCount >= READ_BUFFER_DRAIN_THRESHOLD
+                && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // Replays the buffered reads into the access order. Must hold evictionLock.
+    private void drainReadBuffer() {
+        final long writeCount = readBufferWriteCount.get();
+        final long start = Math.max(readBufferReadCount, writeCount - READ_BUFFER_SIZE);
+        for (long i = start; i < writeCount; i++) {
+            Node<K, V> node = readBuffer.getAndSet((int) (i & READ_BUFFER_MASK), null);
+            if (node != null && node.linked) {
+                moveToTail(node);
+            }
+        }
+        readBufferReadCount = writeCount;
+    }
+
+    private void moveToTail(Node<K, V> node) {
+        if (node == tail) {
+            return;
+        }
+        unlink(node);
+        linkLast(node);
+    }
+
+    private void linkLast(Node<K, V> node) {
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        node.linked = true;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (!node.linked) {
+            return;
+        }
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.linked = false;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int size;
+        Node<K, V> prev;
+        Node<K, V> next;
+        volatile boolean linked;
+
+        Node(K key, V value, int size) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+        }
     }
 
     @SuppressLint("DefaultLocale")
     @Override
-    public synchronized final String toString() {
-        int accesses = hitCount + missCount;
-        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+    public final String toString() {
+        int hits = hitCount.get();
+        int misses = missCount.get();
+        int accesses = hits + misses;
+        int hitPercent = accesses != 0 ? (100 * hits / accesses) : 0;
         return String.format("APICache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
-                maxSize, hitCount, missCount, hitPercent);
+                maxSize, hits, misses, hitPercent);
     }
 }
@@ -0,0 +1,247 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.android.api.core.Core;
+import com.android.api.internal.APIImageLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.ByteString;
+
+public class APIDiskBitmapCache implements APIImageLoader.ImageCache {
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int JPEG_QUALITY = 90;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final Bitmap.Config mDecodeConfig;
+    private final LinkedHashMap<String, Long> mIndex = new LinkedHashMap<String, Long>(0, 0.75f, true);
+    private long mSize;
+    private boolean mInitialized;
+
+    public APIDiskBitmapCache(File directory, long maxSize) {
+        this(directory, maxSize, Bitmap.Config.RGB_565);
+    }
+
+    public APIDiskBitmapCache(File directory, long maxSize, Bitmap.Config decodeConfig) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.mDirectory = directory;
+        this.mMaxSize = maxSize;
+        this.mDecodeConfig = decodeConfig;
+    }
+
+    @Override
+    public Bitmap getBitmap(String key) {
+        final String fileName = getFileName(key);
+        synchronized (mIndex) {
+            initializeIfNecessary();
+            if (mIndex.get(fileName) == null) {
+                return null;
+            }
+        }
+        final File file = new File(mDirectory, fileName);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = mDecodeConfig;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            evict(fileName);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    @Override
+    public void putBitmap(final String key, final Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            return;
+        }
+        // encoded here, as the bitmap may be pooled or recycled once the caller is done with it
+        final Buffer buffer = new Buffer();
+        if (!bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG
+                : Bitmap.CompressFormat.JPEG, JPEG_QUALITY, buffer.outputStream())) {
+            return;
+        }
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                write(getFileName(key), buffer);
+            }
+        });
+    }
+
+    @Override
+    public void evictBitmap(final String key) {
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                evict(getFileName(key));
+            }
+        });
+    }
+
+    @Override
+    public void evictAllBitmap() {
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mIndex) {
+                    initializeIfNecessary();
+                    trimToSize(-1);
+                }
+            }
+        });
+    }
+
+    public long size() {
+        synchronized (mIndex) {
+            return mSize;
+        }
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    private void write(String fileName, Buffer buffer) {
+        synchronized (mIndex) {
+            initializeIfNecessary();
+            if (mIndex.containsKey(fileName)) {
+                return;
+            }
+        }
+        File tempFile = null;
+        OutputStream os = null;
+        boolean written = false;
+        try {
+            tempFile = File.createTempFile(fileName, TEMP_FILE_SUFFIX, mDirectory);
+            os = new FileOutputStream(tempFile);
+            buffer.writeTo(os);
+            written = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (os != null) os.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!written) {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            return;
+        }
+        synchronized (mIndex) {
+            final File file = new File(mDirectory, fileName);
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                return;
+            }
+            final long length = file.length();
+            final Long previous = mIndex.put(fileName, length);
+            if (previous != null) {
+                mSize -= previous;
+            }
+            mSize += length;
+            trimToSize(mMaxSize);
+        }
+    }
+
+    private void evict(String fileName) {
+        synchronized (mIndex) {
+            initializeIfNecessary();
+            final Long length = mIndex.remove(fileName);
+            if (length != null) {
+                mSize -= length;
+            }
+            new File(mDirectory, fileName).delete();
+        }
+    }
+
+    // Must hold mIndex.
+    private void trimToSize(long maxSize) {
+        final Iterator<Map.Entry<String, Long>> iterator = mIndex.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> toEvict = iterator.next();
+            new File(mDirectory, toEvict.getKey()).delete();
+            mSize -= toEvict.getValue();
+            iterator.remove();
+        }
+    }
+
+    // Must hold mIndex.
+    private void initializeIfNecessary() {
+        if (mInitialized) {
+            return;
+        }
+        mInitialized = true;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return;
+        }
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> entries = new ArrayList<File>(files.length);
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+                file.delete();
+            } else if (file.isFile()) {
+                entries.add(file);
+            }
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : entries) {
+            final long length = file.length();
+            mIndex.put(file.getName(), length);
+            mSize += length;
+        }
+        trimToSize(mMaxSize);
+    }
+
+    private static String getFileName(String key) {
+        return ByteString.encodeUtf8(key).md5().hex();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.cache;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.android.api.utils.Utils;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class BitmapPool {
+
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<Bitmap>();
+
+    private long mSize;
+    private long mMaxSize;
+
+    private int putCount;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    public BitmapPool(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.mMaxSize = maxSize;
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    public void put(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        if (!isSupported() || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        final int size = getSize(bitmap);
+        if (size > mMaxSize) {
+            return;
+        }
+        synchronized (this) {
+            putCount++;
+            LinkedList<Bitmap> bucket = mBuckets.get(size);
+            if (bucket == null) {
+                bucket = new LinkedList<Bitmap>();
+                mBuckets.put(size, bucket);
+            }
+            bucket.add(bitmap);
+            mBitmaps.add(bitmap);
+            mSize += size;
+            trimToSize(mMaxSize);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        if (!isSupported() || width <= 0 || height <= 0) {
+            return null;
+        }
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        final int requiredSize = width * height * Utils.getBytesPerPixel(config);
+        Bitmap bitmap = null;
+        synchronized (this) {
+            final Map.Entry<Integer, LinkedList<Bitmap>> entry = mBuckets.ceilingEntry(requiredSize);
+            if (entry != null && entry.getKey() <= requiredSize * MAX_SIZE_MULTIPLE) {
+                bitmap = entry.getValue().removeLast();
+                if (entry.getValue().isEmpty()) {
+                    mBuckets.remove(entry.getKey());
+                }
+                mBitmaps.remove(bitmap);
+                mSize -= entry.getKey();
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return bitmap;
+    }
+
+    public synchronized void trimToSize(long maxSize) {
+        while (mSize > maxSize && !mBitmaps.isEmpty()) {
+            final Bitmap toEvict = mBitmaps.removeFirst();
+            final int size = getSize(toEvict);
+            final LinkedList<Bitmap> bucket = mBuckets.get(size);
+            if (bucket != null) {
+                bucket.remove(toEvict);
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(size);
+                }
+            }
+            mSize -= size;
+            evictionCount++;
+        }
+    }
+
+    public final void evictAll() {
+        trimToSize(0);
+    }
+
+    public synchronized final void resize(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized final long size() {
+        return mSize;
+    }
+
+    public synchronized final long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized final int putCount() {
+        return putCount;
+    }
+
+    public synchronized final int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized final int missCount() {
+        return missCount;
+    }
+
+    public synchronized final int evictionCount() {
+        return evictionCount;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getSize(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public synchronized final String toString() {
+        int accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("BitmapPool[maxSize=%d,size=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mMaxSize, mSize, hitCount, missCount, hitPercent);
+    }
+}
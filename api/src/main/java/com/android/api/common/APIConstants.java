@@ -20,12 +20,24 @@ package com.android.api.common;
 public final class APIConstants {
     public static final int MAX_CACHE_SIZE = 10 * 1024 * 1024;
     public static final int UPDATE = 0x01;
+    public static final int DEFAULT_STREAM_CHUNK_SIZE = 100;
+    public static final int MAX_PENDING_STREAM_CHUNKS = 1;
+    public static final long MIN_DOWNLOAD_SEGMENT_SIZE = 1024 * 1024;
+    public static final long DEFAULT_PROGRESS_MIN_INTERVAL_MILLIS = 100;
+    public static final long ADAPTIVE_HEDGE_DELAY = -1;
     public static final String CACHE_DIR_NAME = "cache_an";
+    public static final String TEMP_FILE_SUFFIX = ".download";
+    public static final String DOWNLOAD_JOURNAL_FILE_NAME = "an_download_journal";
+    public static final String HOST_HISTORY_FILE_NAME = "an_host_history";
+    public static final String IMAGE_CACHE_DIR_NAME = "cache_an_images";
+    public static final String UPLOAD_CHECKPOINT_DIR_NAME = "an_uploads";
     public static final String CONNECTION_ERROR = "connectionError";
     public static final String RESPONSE_FROM_SERVER_ERROR = "responseFromServerError";
     public static final String REQUEST_CANCELLED_ERROR = "requestCancelledError";
     public static final String PARSE_ERROR = "parseError";
+    public static final String DIGEST_MISMATCH_ERROR = "digestMismatchError";
     public static final String PREFETCH = "prefetch";
+    public static final String PRECONNECT = "preconnect";
     public static final String USER_AGENT = "User-Agent";
     public static final String SUCCESS = "success";
     public static final String OPTIONS = "OPTIONS";
@@ -21,10 +21,12 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.widget.ImageView;
 
+import com.android.api.core.APIExecutor;
 import com.android.api.core.Core;
 import com.android.api.error.APIError;
 import com.android.api.interfaces.AnalyticsListener;
 import com.android.api.interfaces.BitmapRequestListener;
+import com.android.api.interfaces.DigestListener;
 import com.android.api.interfaces.DownloadListener;
 import com.android.api.interfaces.DownloadProgressListener;
 import com.android.api.interfaces.JSONArrayRequestListener;
@@ -36,10 +38,18 @@ import com.android.api.interfaces.OkHttpResponseAndParsedRequestListener;
 import com.android.api.interfaces.OkHttpResponseAndStringRequestListener;
 import com.android.api.interfaces.OkHttpResponseListener;
 import com.android.api.interfaces.ParsedRequestListener;
+import com.android.api.interfaces.Parser;
+import com.android.api.interfaces.StreamListener;
 import com.android.api.interfaces.StringRequestListener;
 import com.android.api.interfaces.UploadProgressListener;
+import com.android.api.internal.APIImageLoader;
 import com.android.api.internal.APIRequestQueue;
+import com.android.api.internal.BandwidthThrottler;
+import com.android.api.internal.DownloadDigest;
+import com.android.api.internal.SourceRequestBody;
 import com.android.api.internal.SynchronousCall;
+import com.android.api.model.ProgressSnapshot;
+import com.android.api.utils.JSONStreamParser;
 import com.android.api.utils.ParseUtil;
 import com.android.api.utils.Utils;
 import com.google.gson.internal.$Gson$Types;
@@ -49,14 +59,18 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.CacheControl;
@@ -69,7 +83,9 @@ import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okio.Okio;
+import okio.Source;
 
 @SuppressWarnings({"unchecked", "unused"})
 public class APIRequest<T extends APIRequest> {
@@ -90,6 +106,7 @@ public class APIRequest<T extends APIRequest> {
     private HashMap<String, List<String>> mQueryParameterMap = new HashMap<>();
     private HashMap<String, String> mPathParameterMap = new HashMap<>();
     private HashMap<String, File> mMultiPartFileMap = new HashMap<>();
+    private HashMap<String, SourceRequestBody> mMultiPartStreamMap = new HashMap<>();
     private String mDirPath;
     private String mFileName;
     private String mApplicationJsonString = null;
@@ -101,10 +118,10 @@ public class APIRequest<T extends APIRequest> {
     private static final MediaType MEDIA_TYPE_MARKDOWN =
             MediaType.parse("text/x-markdown; charset=utf-8");
     private MediaType customMediaType = null;
-    private static final Object sDecodeLock = new Object();
 
     private Future future;
     private Call call;
+    private final List<Call> mCalls = new ArrayList<>();
     private int mProgress;
     private boolean isCancelled;
     private boolean isDelivered;
@@ -116,6 +133,7 @@ public class APIRequest<T extends APIRequest> {
     private OkHttpResponseListener mOkHttpResponseListener;
     private BitmapRequestListener mBitmapRequestListener;
     private ParsedRequestListener mParsedRequestListener;
+    private StreamListener mStreamListener;
     private OkHttpResponseAndJSONObjectRequestListener mOkHttpResponseAndJSONObjectRequestListener;
     private OkHttpResponseAndJSONArrayRequestListener mOkHttpResponseAndJSONArrayRequestListener;
     private OkHttpResponseAndStringRequestListener mOkHttpResponseAndStringRequestListener;
@@ -135,6 +153,22 @@ public class APIRequest<T extends APIRequest> {
     private OkHttpClient mOkHttpClient = null;
     private String mUserAgent = null;
     private Type mType = null;
+    private String mCoalescingKey = null;
+    private long mMaxBytesPerSecond;
+    private int mStreamChunkSize = APIConstants.DEFAULT_STREAM_CHUNK_SIZE;
+    private boolean mResumable;
+    private final ProgressSnapshot mProgressSnapshot = new ProgressSnapshot();
+    private int mParallelSegments = 1;
+    private String mDigestAlgorithm;
+    private String mExpectedDigest;
+    private String mDigest;
+    private DigestListener mDigestListener;
+    private long mUploadChunkSize;
+    private int mUploadParallelism = 1;
+    private Boolean mRequestCompression;
+    private BandwidthThrottler mBandwidthThrottler;
+    private long mHedgeDelayMillis;
+    private long mHeadersLatencyMillis = -1;
 
     public APIRequest(GetRequestBuilder builder) {
         this.mRequestType = RequestType.SIMPLE;
@@ -153,6 +187,8 @@ public class APIRequest<T extends APIRequest> {
         this.mExecutor = builder.mExecutor;
         this.mOkHttpClient = builder.mOkHttpClient;
         this.mUserAgent = builder.mUserAgent;
+        this.mMaxBytesPerSecond = builder.mMaxBytesPerSecond;
+        this.mHedgeDelayMillis = builder.mHedgeDelayMillis;
     }
 
     public APIRequest(PostRequestBuilder builder) {
@@ -174,6 +210,8 @@ public class APIRequest<T extends APIRequest> {
         this.mExecutor = builder.mExecutor;
         this.mOkHttpClient = builder.mOkHttpClient;
         this.mUserAgent = builder.mUserAgent;
+        this.mMaxBytesPerSecond = builder.mMaxBytesPerSecond;
+        this.mRequestCompression = builder.mRequestCompression;
         if (builder.mCustomContentType != null) {
             this.customMediaType = MediaType.parse(builder.mCustomContentType);
         }
@@ -187,6 +225,11 @@ public class APIRequest<T extends APIRequest> {
         this.mTag = builder.mTag;
         this.mDirPath = builder.mDirPath;
         this.mFileName = builder.mFileName;
+        this.mResumable = builder.mResumable;
+        this.mParallelSegments = builder.mParallelSegments;
+        this.mDigestAlgorithm = builder.mDigestAlgorithm;
+        this.mExpectedDigest = builder.mExpectedDigest;
+        this.mDigestListener = builder.mDigestListener;
         this.mHeadersMap = builder.mHeadersMap;
         this.mQueryParameterMap = builder.mQueryParameterMap;
         this.mPathParameterMap = builder.mPathParameterMap;
@@ -195,6 +238,7 @@ public class APIRequest<T extends APIRequest> {
         this.mExecutor = builder.mExecutor;
         this.mOkHttpClient = builder.mOkHttpClient;
         this.mUserAgent = builder.mUserAgent;
+        this.mMaxBytesPerSecond = builder.mMaxBytesPerSecond;
     }
 
     public APIRequest(MultiPartBuilder builder) {
@@ -208,11 +252,16 @@ public class APIRequest<T extends APIRequest> {
         this.mPathParameterMap = builder.mPathParameterMap;
         this.mMultiPartParameterMap = builder.mMultiPartParameterMap;
         this.mMultiPartFileMap = builder.mMultiPartFileMap;
+        this.mMultiPartStreamMap = builder.mMultiPartStreamMap;
         this.mCacheControl = builder.mCacheControl;
         this.mPercentageThresholdForCancelling = builder.mPercentageThresholdForCancelling;
         this.mExecutor = builder.mExecutor;
         this.mOkHttpClient = builder.mOkHttpClient;
         this.mUserAgent = builder.mUserAgent;
+        this.mMaxBytesPerSecond = builder.mMaxBytesPerSecond;
+        this.mRequestCompression = builder.mRequestCompression;
+        this.mUploadChunkSize = builder.mUploadChunkSize;
+        this.mUploadParallelism = builder.mUploadParallelism;
         if (builder.mCustomContentType != null) {
             this.customMediaType = MediaType.parse(builder.mCustomContentType);
         }
@@ -269,6 +318,18 @@ public class APIRequest<T extends APIRequest> {
         APIRequestQueue.getInstance().addRequest(this);
     }
 
+    public void getAsObjectStream(Class objectClass, StreamListener streamListener) {
+        getAsObjectStream(objectClass, APIConstants.DEFAULT_STREAM_CHUNK_SIZE, streamListener);
+    }
+
+    public void getAsObjectStream(Class objectClass, int chunkSize, StreamListener streamListener) {
+        this.mType = objectClass;
+        this.mStreamChunkSize = chunkSize > 0 ? chunkSize : APIConstants.DEFAULT_STREAM_CHUNK_SIZE;
+        this.mResponseType = ResponseType.OBJECT_STREAM;
+        this.mStreamListener = streamListener;
+        APIRequestQueue.getInstance().addRequest(this);
+    }
+
     public void getAsOkHttpResponseAndJSONObject(OkHttpResponseAndJSONObjectRequestListener requestListener) {
         this.mResponseType = ResponseType.JSON_OBJECT;
         this.mOkHttpResponseAndJSONObjectRequestListener = requestListener;
@@ -319,6 +380,11 @@ public class APIRequest<T extends APIRequest> {
         APIRequestQueue.getInstance().addRequest(this);
     }
 
+    public void startDownload(DownloadListener downloadListener, APIExecutor executor) {
+        this.mDownloadListener = downloadListener;
+        APIRequestQueue.getInstance().addRequest(this, executor);
+    }
+
     public void prefetch() {
         this.mResponseType = ResponseType.PREFETCH;
         APIRequestQueue.getInstance().addRequest(this);
@@ -478,14 +544,19 @@ public class APIRequest<T extends APIRequest> {
         };
     }
 
+    public boolean hasDownloadProgressListener() {
+        return mDownloadProgressListener != null;
+    }
+
     public void updateDownloadCompletion() {
         isDelivered = true;
-        if (mDownloadListener != null) {
+        if (mDownloadListener != null || mDigestListener != null) {
             if (!isCancelled) {
                 if (mExecutor != null) {
                     mExecutor.execute(new Runnable() {
                         @Override
                         public void run() {
+                            deliverDigest();
                             if (mDownloadListener != null) {
                                 mDownloadListener.onDownloadComplete();
                             }
@@ -496,6 +567,7 @@ public class APIRequest<T extends APIRequest> {
                     Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
                         @Override
                         public void run() {
+                            deliverDigest();
                             if (mDownloadListener != null) {
                                 mDownloadListener.onDownloadComplete();
                             }
@@ -512,6 +584,29 @@ public class APIRequest<T extends APIRequest> {
         }
     }
 
+    private void deliverDigest() {
+        if (mDigestListener != null && mDigest != null) {
+            mDigestListener.onDigestComputed(mDigestAlgorithm != null
+                    ? mDigestAlgorithm : DownloadDigest.DEFAULT_ALGORITHM, mDigest);
+        }
+    }
+
+    public DigestListener getDigestListener() {
+        return mDigestListener;
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return mMaxBytesPerSecond;
+    }
+
+    public ProgressSnapshot getProgressSnapshot() {
+        return mProgressSnapshot;
+    }
+
     public UploadProgressListener getUploadProgressListener() {
         return new UploadProgressListener() {
             @Override
@@ -532,6 +627,66 @@ public class APIRequest<T extends APIRequest> {
         return mFileName;
     }
 
+    public boolean isResumable() {
+        return mResumable;
+    }
+
+    public int getParallelSegments() {
+        return mParallelSegments;
+    }
+
+    public long getUploadChunkSize() {
+        return mUploadChunkSize;
+    }
+
+    public int getUploadParallelism() {
+        return mUploadParallelism;
+    }
+
+    public Boolean getRequestCompression() {
+        return mRequestCompression;
+    }
+
+    public long getHedgeDelayMillis() {
+        return mHedgeDelayMillis;
+    }
+
+    public long getHeadersLatencyMillis() {
+        return mHeadersLatencyMillis;
+    }
+
+    public void setHeadersLatencyMillis(long headersLatencyMillis) {
+        mHeadersLatencyMillis = headersLatencyMillis;
+    }
+
+    public BandwidthThrottler getBandwidthThrottler() {
+        return mBandwidthThrottler;
+    }
+
+    public void setBandwidthThrottler(BandwidthThrottler bandwidthThrottler) {
+        mBandwidthThrottler = bandwidthThrottler;
+    }
+
+    public boolean isDigestRequired() {
+        return mExpectedDigest != null || mDigestListener != null;
+    }
+
+    public String getDigestAlgorithm() {
+        return mDigestAlgorithm;
+    }
+
+    public String getExpectedDigest() {
+        return mExpectedDigest;
+    }
+
+    public String getDigest() {
+        return mDigest;
+    }
+
+    public void setDigest(String digest) {
+        this.mDigest = digest;
+    }
+
     public CacheControl getCacheControl() {
         return mCacheControl;
     }
@@ -546,11 +701,18 @@ public class APIRequest<T extends APIRequest> {
                     || mProgress < mPercentageThresholdForCancelling) {
                 isCancelled = true;
                 isRunning = false;
-                if (call != null) {
-                    call.cancel();
-                }
-                if (future != null) {
-                    future.cancel(true);
+                if (!APIRequestQueue.getInstance().detachCancelledRequest(this)) {
+                    if (call != null) {
+                        call.cancel();
+                    }
+                    synchronized (mCalls) {
+                        for (Call extraCall : mCalls) {
+                            extraCall.cancel();
+                        }
+                    }
+                    if (future != null) {
+                        future.cancel(true);
+                    }
                 }
                 if (!isDelivered) {
                     deliverError(new APIError());
@@ -581,6 +743,23 @@ public class APIRequest<T extends APIRequest> {
         this.call = call;
     }
 
+    public void addCall(Call call) {
+        boolean cancelled;
+        synchronized (mCalls) {
+            mCalls.add(call);
+            cancelled = isCancelled;
+        }
+        if (cancelled) {
+            call.cancel();
+        }
+    }
+
+    public void removeCall(Call call) {
+        synchronized (mCalls) {
+            mCalls.remove(call);
+        }
+    }
+
     public Future getFuture() {
         return future;
     }
@@ -595,9 +774,11 @@ public class APIRequest<T extends APIRequest> {
         mStringRequestListener = null;
         mBitmapRequestListener = null;
         mParsedRequestListener = null;
+        mStreamListener = null;
         mDownloadProgressListener = null;
         mUploadProgressListener = null;
         mDownloadListener = null;
+        mDigestListener = null;
         mAnalyticsListener = null;
     }
 
@@ -606,19 +787,60 @@ public class APIRequest<T extends APIRequest> {
         APIRequestQueue.getInstance().finish(this);
     }
 
+    public String getCoalescingKey() {
+        return mCoalescingKey;
+    }
+
+    public void setCoalescingKey(String coalescingKey) {
+        this.mCoalescingKey = coalescingKey;
+    }
+
+    public String buildCoalescingKey() {
+        if (mRequestType != RequestType.SIMPLE || mOkHttpClient != null
+                || (mMethod != Method.GET && mMethod != Method.HEAD)) {
+            return null;
+        }
+        switch (mResponseType) {
+            case JSON_OBJECT:
+            case JSON_ARRAY:
+            case STRING:
+            case PARSED:
+                break;
+            default:
+                return null;
+        }
+        try {
+            return new StringBuilder()
+                    .append(mMethod).append('#')
+                    .append(mResponseType.ordinal()).append('#')
+                    .append(mPriority).append('#')
+                    .append(mMaxBytesPerSecond).append('#')
+                    .append(mHedgeDelayMillis).append('#')
+                    .append(mExecutor == null ? 0 : System.identityHashCode(mExecutor)).append('#')
+                    .append(mType).append('#')
+                    .append(mUserAgent).append('#')
+                    .append(mCacheControl).append('#')
+                    .append(getHeaders()).append('#')
+                    .append(getUrl())
+                    .toString();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     public APIResponse parseResponse(Response response) {
         switch (mResponseType) {
             case JSON_ARRAY:
                 try {
-                    JSONArray json = new JSONArray(Okio.buffer(response.body().source()).readUtf8());
+                    JSONArray json = JSONStreamParser.parseArray(response.body().source());
                     return APIResponse.success(json);
                 } catch (Exception e) {
                     return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
                 }
             case JSON_OBJECT:
                 try {
-                    JSONObject json = new JSONObject(Okio.buffer(response.body()
-                            .source()).readUtf8());
+                    JSONObject json = JSONStreamParser.parseObject(response.body().source());
                     return APIResponse.success(json);
                 } catch (Exception e) {
                     return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
@@ -631,13 +853,12 @@ public class APIRequest<T extends APIRequest> {
                     return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
                 }
             case BITMAP:
-                synchronized (sDecodeLock) {
-                    try {
-                        return Utils.decodeBitmap(response, mMaxWidth, mMaxHeight,
-                                mDecodeConfig, mScaleType);
-                    } catch (Exception e) {
-                        return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
-                    }
+                try {
+                    return Utils.decodeBitmap(response, mMaxWidth, mMaxHeight,
+                            mDecodeConfig, new BitmapFactory.Options(), mScaleType,
+                            APIImageLoader.getInstance().getBitmapPool());
+                } catch (Exception e) {
+                    return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
                 }
             case PARSED:
                 try {
@@ -646,6 +867,12 @@ public class APIRequest<T extends APIRequest> {
                 } catch (Exception e) {
                     return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
                 }
+            case OBJECT_STREAM:
+                try {
+                    return APIResponse.success(parseObjectStream(response.body()));
+                } catch (Exception e) {
+                    return APIResponse.failed(Utils.getErrorForParse(new APIError(e)));
+                }
             case PREFETCH:
                 try {
                     Okio.buffer(response.body().source()).skip(Long.MAX_VALUE);
@@ -657,6 +884,65 @@ public class APIRequest<T extends APIRequest> {
         return null;
     }
 
+    private int parseObjectStream(ResponseBody responseBody) throws Exception {
+        Parser.Factory parserFactory = ParseUtil.getParserFactory();
+        Parser<ResponseBody, ? extends Iterator<?>> streamParser =
+                parserFactory.responseBodyStreamParser(mType);
+        Iterator<?> iterator;
+        if (streamParser != null) {
+            iterator = streamParser.convert(responseBody);
+        } else {
+            List<?> list = (List<?>) parserFactory.responseBodyParser($Gson$Types
+                    .newParameterizedTypeWithOwner(null, List.class, mType)).convert(responseBody);
+            iterator = list.iterator();
+        }
+        final Semaphore pendingChunks = new Semaphore(APIConstants.MAX_PENDING_STREAM_CHUNKS);
+        List<Object> chunk = new ArrayList<>(mStreamChunkSize);
+        int count = 0;
+        while (iterator.hasNext()) {
+            if (isCancelled) {
+                throw new IOException("Canceled");
+            }
+            chunk.add(iterator.next());
+            count++;
+            if (chunk.size() == mStreamChunkSize) {
+                deliverChunk(chunk, pendingChunks);
+                chunk = new ArrayList<>(mStreamChunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            deliverChunk(chunk, pendingChunks);
+        }
+        // wait for the listener to consume every chunk so onComplete comes last
+        pendingChunks.acquire(APIConstants.MAX_PENDING_STREAM_CHUNKS);
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverChunk(final List<Object> chunk, final Semaphore pendingChunks)
+            throws InterruptedException {
+        // blocks the parser while the listener is behind so decoded items don't pile up
+        pendingChunks.acquire();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    StreamListener streamListener = mStreamListener;
+                    if (!isCancelled && streamListener != null) {
+                        streamListener.onChunk(chunk);
+                    }
+                } finally {
+                    pendingChunks.release();
+                }
+            }
+        };
+        if (mExecutor != null) {
+            mExecutor.execute(runnable);
+        } else {
+            Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(runnable);
+        }
+    }
+
     public APIError parseNetworkError(APIError apiError) {
         try {
             if (apiError.getResponse() != null && apiError.getResponse().body() != null
@@ -726,6 +1012,8 @@ public class APIRequest<T extends APIRequest> {
             mBitmapRequestListener.onResponse((Bitmap) response.getResult());
         } else if (mParsedRequestListener != null) {
             mParsedRequestListener.onResponse(response.getResult());
+        } else if (mStreamListener != null) {
+            mStreamListener.onComplete();
         } else if (mOkHttpResponseAndJSONObjectRequestListener != null) {
             mOkHttpResponseAndJSONObjectRequestListener.onResponse(response.getOkHttpResponse(), (JSONObject) response.getResult());
         } else if (mOkHttpResponseAndJSONArrayRequestListener != null) {
@@ -751,6 +1039,8 @@ public class APIRequest<T extends APIRequest> {
             mBitmapRequestListener.onError(apiError);
         } else if (mParsedRequestListener != null) {
             mParsedRequestListener.onError(apiError);
+        } else if (mStreamListener != null) {
+            mStreamListener.onError(apiError);
         } else if (mOkHttpResponseListener != null) {
             mOkHttpResponseListener.onError(apiError);
         } else if (mOkHttpResponseAndJSONObjectRequestListener != null) {
@@ -843,7 +1133,19 @@ public class APIRequest<T extends APIRequest> {
         }
     }
 
+    public HashMap<String, File> getMultiPartFileMap() {
+        return mMultiPartFileMap;
+    }
+
+    public HashMap<String, SourceRequestBody> getMultiPartStreamMap() {
+        return mMultiPartStreamMap;
+    }
+
     public RequestBody getMultiPartRequestBody() {
+        return getMultiPartRequestBody(null, null);
+    }
+
+    public RequestBody getMultiPartRequestBody(String replacedFileKey, RequestBody replacedFileBody) {
         MultipartBody.Builder builder = new MultipartBody
                 .Builder()
                 .setType((customMediaType == null) ? MultipartBody.FORM : customMediaType);
@@ -855,12 +1157,18 @@ public class APIRequest<T extends APIRequest> {
             }
             for (HashMap.Entry<String, File> entry : mMultiPartFileMap.entrySet()) {
                 String fileName = entry.getValue().getName();
-                RequestBody fileBody = RequestBody.create(MediaType.parse(Utils.getMimeType(fileName)),
-                        entry.getValue());
+                RequestBody fileBody = entry.getKey().equals(replacedFileKey) ? replacedFileBody
+                        : RequestBody.create(MediaType.parse(Utils.getMimeType(fileName)), entry.getValue());
                 builder.addPart(Headers.of("Content-Disposition",
                         "form-data; name=\"" + entry.getKey() + "\"; filename=\"" + fileName + "\""),
                         fileBody);
             }
+            for (HashMap.Entry<String, SourceRequestBody> entry : mMultiPartStreamMap.entrySet()) {
+                builder.addPart(Headers.of("Content-Disposition",
+                        "form-data; name=\"" + entry.getKey() + "\"; filename=\""
+                                + entry.getValue().getFileName() + "\""),
+                        entry.getValue());
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -919,6 +1227,8 @@ public class APIRequest<T extends APIRequest> {
         private Executor mExecutor;
         private OkHttpClient mOkHttpClient;
         private String mUserAgent;
+        private long mMaxBytesPerSecond;
+        private long mHedgeDelayMillis;
 
         public GetRequestBuilder(String url) {
             this.mUrl = url;
@@ -1080,6 +1390,12 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        @Override
+        public T setMaxBytesPerSecond(long maxBytesPerSecond) {
+            mMaxBytesPerSecond = maxBytesPerSecond;
+            return (T) this;
+        }
+
         public T setBitmapConfig(Bitmap.Config bitmapConfig) {
             mDecodeConfig = bitmapConfig;
             return (T) this;
@@ -1105,6 +1421,16 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        public T setHedging(long delay, TimeUnit timeUnit) {
+            mHedgeDelayMillis = timeUnit.toMillis(delay);
+            return (T) this;
+        }
+
+        public T setAdaptiveHedging() {
+            mHedgeDelayMillis = APIConstants.ADAPTIVE_HEDGE_DELAY;
+            return (T) this;
+        }
+
         public APIRequest build() {
             return new APIRequest(this);
         }
@@ -1157,7 +1483,9 @@ public class APIRequest<T extends APIRequest> {
         private Executor mExecutor;
         private OkHttpClient mOkHttpClient;
         private String mUserAgent;
+        private long mMaxBytesPerSecond;
         private String mCustomContentType;
+        private Boolean mRequestCompression;
 
         public PostRequestBuilder(String url) {
             this.mUrl = url;
@@ -1319,6 +1647,12 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        @Override
+        public T setMaxBytesPerSecond(long maxBytesPerSecond) {
+            mMaxBytesPerSecond = maxBytesPerSecond;
+            return (T) this;
+        }
+
         public T addBodyParameter(String key, String value) {
             mBodyParameterMap.put(key, value);
             return (T) this;
@@ -1404,6 +1738,11 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        public T setRequestCompression(boolean enabled) {
+            mRequestCompression = enabled;
+            return (T) this;
+        }
+
         public APIRequest build() {
             return new APIRequest(this);
         }
@@ -1419,11 +1758,17 @@ public class APIRequest<T extends APIRequest> {
         private HashMap<String, String> mPathParameterMap = new HashMap<>();
         private String mDirPath;
         private String mFileName;
+        private boolean mResumable;
+        private int mParallelSegments = 1;
+        private String mDigestAlgorithm;
+        private String mExpectedDigest;
+        private DigestListener mDigestListener;
         private CacheControl mCacheControl;
         private int mPercentageThresholdForCancelling = 0;
         private Executor mExecutor;
         private OkHttpClient mOkHttpClient;
         private String mUserAgent;
+        private long mMaxBytesPerSecond;
 
         public DownloadBuilder(String url, String dirPath, String fileName) {
             this.mUrl = url;
@@ -1581,11 +1926,39 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        @Override
+        public T setMaxBytesPerSecond(long maxBytesPerSecond) {
+            mMaxBytesPerSecond = maxBytesPerSecond;
+            return (T) this;
+        }
+
         public T setPercentageThresholdForCancelling(int percentageThresholdForCancelling) {
             mPercentageThresholdForCancelling = percentageThresholdForCancelling;
             return (T) this;
         }
 
+        public T setResumable(boolean resumable) {
+            mResumable = resumable;
+            return (T) this;
+        }
+
+        // ignored for resumable downloads, they need a single stream to resume from
+        public T setParallelSegments(int parallelSegments) {
+            mParallelSegments = Math.max(1, parallelSegments);
+            return (T) this;
+        }
+
+        public T setExpectedDigest(String algorithm, String hex) {
+            mDigestAlgorithm = algorithm;
+            mExpectedDigest = hex;
+            return (T) this;
+        }
+
+        public T setDigestListener(DigestListener digestListener) {
+            mDigestListener = digestListener;
+            return (T) this;
+        }
+
         public APIRequest build() {
             return new APIRequest(this);
         }
@@ -1601,12 +1974,17 @@ public class APIRequest<T extends APIRequest> {
         private HashMap<String, List<String>> mQueryParameterMap = new HashMap<>();
         private HashMap<String, String> mPathParameterMap = new HashMap<>();
         private HashMap<String, File> mMultiPartFileMap = new HashMap<>();
+        private HashMap<String, SourceRequestBody> mMultiPartStreamMap = new HashMap<>();
         private CacheControl mCacheControl;
         private int mPercentageThresholdForCancelling = 0;
         private Executor mExecutor;
         private OkHttpClient mOkHttpClient;
         private String mUserAgent;
+        private long mMaxBytesPerSecond;
         private String mCustomContentType;
+        private Boolean mRequestCompression;
+        private long mUploadChunkSize;
+        private int mUploadParallelism = 1;
 
         public MultiPartBuilder(String url) {
             this.mUrl = url;
@@ -1762,6 +2140,12 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        @Override
+        public T setMaxBytesPerSecond(long maxBytesPerSecond) {
+            mMaxBytesPerSecond = maxBytesPerSecond;
+            return (T) this;
+        }
+
         public T addMultipartParameter(String key, String value) {
             mMultiPartParameterMap.put(key, value);
             return (T) this;
@@ -1795,6 +2179,21 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        public T addMultipartStream(String key, String fileName, InputStream inputStream) {
+            return addMultipartSource(key, fileName, Okio.source(inputStream), -1);
+        }
+
+        public T addMultipartStream(String key, String fileName, InputStream inputStream,
+                                    long contentLength) {
+            return addMultipartSource(key, fileName, Okio.source(inputStream), contentLength);
+        }
+
+        public T addMultipartSource(String key, String fileName, Source source, long contentLength) {
+            mMultiPartStreamMap.put(key, new SourceRequestBody(fileName,
+                    MediaType.parse(Utils.getMimeType(fileName)), source, contentLength));
+            return (T) this;
+        }
+
         public T setPercentageThresholdForCancelling(int percentageThresholdForCancelling) {
             this.mPercentageThresholdForCancelling = percentageThresholdForCancelling;
             return (T) this;
@@ -1805,6 +2204,21 @@ public class APIRequest<T extends APIRequest> {
             return (T) this;
         }
 
+        public T setRequestCompression(boolean enabled) {
+            mRequestCompression = enabled;
+            return (T) this;
+        }
+
+        public T setChunkedUpload(long chunkSize) {
+            return setChunkedUpload(chunkSize, 1);
+        }
+
+        public T setChunkedUpload(long chunkSize, int parallelism) {
+            mUploadChunkSize = chunkSize;
+            mUploadParallelism = Math.max(1, parallelism);
+            return (T) this;
+        }
+
         public APIRequest build() {
             return new APIRequest(this);
         }
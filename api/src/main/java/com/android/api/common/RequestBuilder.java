@@ -63,4 +63,6 @@ public interface RequestBuilder {
 
     RequestBuilder setUserAgent(String userAgent);
 
+    RequestBuilder setMaxBytesPerSecond(long maxBytesPerSecond);
+
 }
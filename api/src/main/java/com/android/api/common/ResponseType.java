@@ -24,5 +24,6 @@ public enum ResponseType {
     OK_HTTP_RESPONSE,
     BITMAP,
     PREFETCH,
-    PARSED
+    PARSED,
+    OBJECT_STREAM
 }
@@ -0,0 +1,97 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.core;
+
+public class AIMDConcurrencyLimiter implements ConcurrencyLimiter {
+
+    private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    private static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+    // kbps, the same floor ConnectionClassManager uses for POOR, that each running request is given
+    public static final int MIN_BANDWIDTH_PER_REQUEST_KBPS = 150;
+    private static final double SHORT_SMOOTHING_FACTOR = 0.2;
+    private static final double LONG_SMOOTHING_FACTOR = 0.02;
+
+    private final int mMinLimit;
+    private final int mMaxLimit;
+    private final double mBackoffRatio;
+    private final double mLatencyTolerance;
+    private int mLimit;
+    private double mShortLatency = 0;
+    private double mLongLatency = 0;
+    private int mNumberOfSamples = 0;
+    private int mSamplesSinceChange = 0;
+
+    public AIMDConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, DEFAULT_BACKOFF_RATIO, DEFAULT_LATENCY_TOLERANCE);
+    }
+
+    public AIMDConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                  double backoffRatio, double latencyTolerance) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("minLimit <= 0 || maxLimit < minLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+        }
+        if (latencyTolerance < 1) {
+            throw new IllegalArgumentException("latencyTolerance < 1");
+        }
+        this.mMinLimit = minLimit;
+        this.mMaxLimit = maxLimit;
+        this.mBackoffRatio = backoffRatio;
+        this.mLatencyTolerance = latencyTolerance;
+        this.mLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return mLimit;
+    }
+
+    @Override
+    public synchronized int onSample(long latencyInMillis, int bandwidth, int inFlight, int queueSize) {
+        if (latencyInMillis < 0) {
+            return mLimit;
+        }
+        if (mNumberOfSamples == 0) {
+            mShortLatency = latencyInMillis;
+            mLongLatency = latencyInMillis;
+        } else {
+            mShortLatency += SHORT_SMOOTHING_FACTOR * (latencyInMillis - mShortLatency);
+            mLongLatency += LONG_SMOOTHING_FACTOR * (latencyInMillis - mLongLatency);
+        }
+        mNumberOfSamples++;
+        mSamplesSinceChange++;
+
+        int limit = mLimit;
+        if (mSamplesSinceChange >= limit) {
+            if (mShortLatency > Math.max(1, mLongLatency) * mLatencyTolerance) {
+                limit = (int) (limit * mBackoffRatio);
+                mSamplesSinceChange = 0;
+            } else if (queueSize > 0 && inFlight >= limit) {
+                limit++;
+                mSamplesSinceChange = 0;
+            }
+        }
+        if (bandwidth > 0) {
+            limit = Math.min(limit, Math.max(mMinLimit, bandwidth / MIN_BANDWIDTH_PER_REQUEST_KBPS));
+        }
+        mLimit = Math.max(mMinLimit, Math.min(mMaxLimit, limit));
+        return mLimit;
+    }
+}
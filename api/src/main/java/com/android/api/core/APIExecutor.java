@@ -21,9 +21,15 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.telephony.TelephonyManager;
 
+import com.android.api.common.ConnectionClassManager;
 import com.android.api.common.Priority;
 import com.android.api.internal.InternalRunnable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -31,15 +37,57 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.HttpUrl;
+
 public class APIExecutor extends ThreadPoolExecutor {
 
     private static final int DEFAULT_THREAD_COUNT = 3;
+    // no cap unless asked for, hosts still take turns within a priority
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 0;
+
+    private volatile ConcurrencyLimiter mConcurrencyLimiter;
+    // guarded by this
+    private final HashMap<String, HostQueue> mHostQueues = new HashMap<>();
+    private int mMaxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private int mParkedCount;
+    private long mCurrentRound;
 
     APIExecutor(int maxNumThreads, ThreadFactory threadFactory) {
         super(maxNumThreads, maxNumThreads, 0, TimeUnit.MILLISECONDS,
                 new PriorityBlockingQueue<Runnable>(), threadFactory);
     }
 
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        mConcurrencyLimiter = concurrencyLimiter;
+        if (concurrencyLimiter != null) {
+            setThreadCount(concurrencyLimiter.getLimit());
+        }
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return mConcurrencyLimiter;
+    }
+
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        synchronized (this) {
+            mMaxRequestsPerHost = maxRequestsPerHost;
+        }
+        releaseParkedTasks(null);
+    }
+
+    public synchronized int getMaxRequestsPerHost() {
+        return mMaxRequestsPerHost;
+    }
+
+    public boolean hasPendingTasks() {
+        synchronized (this) {
+            if (mParkedCount > 0) {
+                return true;
+            }
+        }
+        return !getQueue().isEmpty();
+    }
+
     void adjustThreadCount(NetworkInfo info) {
         if (info == null || !info.isConnectedOrConnecting()) {
             setThreadCount(DEFAULT_THREAD_COUNT);
@@ -79,31 +127,149 @@ public class APIExecutor extends ThreadPoolExecutor {
     }
 
     private void setThreadCount(int threadCount) {
-        setCorePoolSize(threadCount);
-        setMaximumPoolSize(threadCount);
+        if (threadCount > getMaximumPoolSize()) {
+            setMaximumPoolSize(threadCount);
+            setCorePoolSize(threadCount);
+        } else if (threadCount < getMaximumPoolSize()) {
+            setCorePoolSize(threadCount);
+            setMaximumPoolSize(threadCount);
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        if (runnable instanceof APIFutureTask) {
+            synchronized (this) {
+                mCurrentRound = Math.max(mCurrentRound, ((APIFutureTask) runnable).round);
+            }
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        if (runnable instanceof APIFutureTask) {
+            releaseParkedTasks((APIFutureTask) runnable);
+        }
+        final ConcurrencyLimiter concurrencyLimiter = mConcurrencyLimiter;
+        if (concurrencyLimiter == null || !(runnable instanceof APIFutureTask)
+                || ((APIFutureTask) runnable).isCancelled()) {
+            return;
+        }
+        final long latency = ((APIFutureTask) runnable).hunter.request.getHeadersLatencyMillis();
+        final int parkedCount;
+        synchronized (this) {
+            parkedCount = mParkedCount;
+        }
+        // parked tasks wait for a thread just like queued ones
+        final int limit = concurrencyLimiter.onSample(latency,
+                ConnectionClassManager.getInstance().getCurrentBandwidth(),
+                getActiveCount(), getQueue().size() + parkedCount);
+        if (limit > 0 && limit != getMaximumPoolSize()) {
+            setThreadCount(limit);
+        }
     }
 
     @Override
     public Future<?> submit(Runnable task) {
         APIFutureTask futureTask = new APIFutureTask((InternalRunnable) task);
-        execute(futureTask);
+        boolean admitted;
+        synchronized (this) {
+            HostQueue hostQueue = mHostQueues.get(futureTask.host);
+            if (hostQueue == null) {
+                hostQueue = new HostQueue();
+                mHostQueues.put(futureTask.host, hostQueue);
+            }
+            admitted = hostQueue.active < mMaxRequestsPerHost || mMaxRequestsPerHost <= 0;
+            if (admitted) {
+                admit(hostQueue, futureTask);
+            } else {
+                // the host is at its limit, wait for one of its requests to finish
+                hostQueue.parked.add(futureTask);
+                mParkedCount++;
+            }
+        }
+        if (admitted) {
+            execute(futureTask);
+        }
         return futureTask;
     }
 
+    private void admit(HostQueue hostQueue, APIFutureTask task) {
+        // tasks of one host are spread over rounds so hosts take turns within a priority
+        hostQueue.active++;
+        task.round = Math.max(hostQueue.nextRound, mCurrentRound);
+        hostQueue.nextRound = task.round + 1;
+    }
+
+    private void releaseParkedTasks(APIFutureTask finishedTask) {
+        List<APIFutureTask> released = new ArrayList<>();
+        synchronized (this) {
+            if (finishedTask != null) {
+                HostQueue hostQueue = mHostQueues.get(finishedTask.host);
+                if (hostQueue != null) {
+                    hostQueue.active--;
+                }
+            }
+            Iterator<HostQueue> iterator = mHostQueues.values().iterator();
+            while (iterator.hasNext()) {
+                HostQueue hostQueue = iterator.next();
+                while (!hostQueue.parked.isEmpty()
+                        && (hostQueue.active < mMaxRequestsPerHost || mMaxRequestsPerHost <= 0)) {
+                    APIFutureTask task = hostQueue.parked.poll();
+                    mParkedCount--;
+                    admit(hostQueue, task);
+                    released.add(task);
+                }
+                if (hostQueue.active == 0 && hostQueue.parked.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+        for (APIFutureTask task : released) {
+            execute(task);
+        }
+    }
+
+    private static String getHost(InternalRunnable hunter) {
+        try {
+            HttpUrl url = HttpUrl.parse(hunter.request.getUrl());
+            return url != null ? url.host() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static final class HostQueue {
+        private final PriorityQueue<APIFutureTask> parked = new PriorityQueue<>();
+        private int active;
+        private long nextRound;
+    }
+
     private static final class APIFutureTask extends FutureTask<InternalRunnable>
             implements Comparable<APIFutureTask> {
         private final InternalRunnable hunter;
+        private final String host;
+        private long round;
 
         public APIFutureTask(InternalRunnable hunter) {
             super(hunter, null);
             this.hunter = hunter;
+            this.host = getHost(hunter);
         }
 
         @Override
         public int compareTo(APIFutureTask other) {
             Priority p1 = hunter.getPriority();
             Priority p2 = other.hunter.getPriority();
-            return (p1 == p2 ? hunter.sequence - other.hunter.sequence : p2.ordinal() - p1.ordinal());
+            if (p1 != p2) {
+                return p2.ordinal() - p1.ordinal();
+            }
+            if (round != other.round) {
+                return round < other.round ? -1 : 1;
+            }
+            return hunter.sequence - other.hunter.sequence;
         }
     }
 }
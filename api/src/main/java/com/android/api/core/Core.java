@@ -41,6 +41,16 @@ public class Core {
         return mExecutorSupplier;
     }
 
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        mExecutorSupplier.forNetworkTasks().setConcurrencyLimiter(concurrencyLimiter);
+    }
+
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        mExecutorSupplier.forNetworkTasks().setMaxRequestsPerHost(maxRequestsPerHost);
+        mExecutorSupplier.forImmediateNetworkTasks().setMaxRequestsPerHost(maxRequestsPerHost);
+        mExecutorSupplier.forDownloadTasks().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
     public static void shutDown() {
         if (sInstance != null) {
             sInstance = null;
@@ -0,0 +1,91 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.core;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class DecodeExecutor extends ThreadPoolExecutor {
+
+    private final Object mBudgetLock = new Object();
+    private long mMaxInFlightBytes;
+    private long mInFlightBytes;
+
+    DecodeExecutor(int maxNumThreads, long maxInFlightBytes, ThreadFactory threadFactory) {
+        super(maxNumThreads, maxNumThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        mMaxInFlightBytes = maxInFlightBytes;
+    }
+
+    public void setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount <= 0");
+        }
+        if (threadCount > getMaximumPoolSize()) {
+            setMaximumPoolSize(threadCount);
+            setCorePoolSize(threadCount);
+        } else {
+            setCorePoolSize(threadCount);
+            setMaximumPoolSize(threadCount);
+        }
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        if (maxInFlightBytes <= 0) {
+            throw new IllegalArgumentException("maxInFlightBytes <= 0");
+        }
+        synchronized (mBudgetLock) {
+            mMaxInFlightBytes = maxInFlightBytes;
+            mBudgetLock.notifyAll();
+        }
+    }
+
+    public long getMaxInFlightBytes() {
+        synchronized (mBudgetLock) {
+            return mMaxInFlightBytes;
+        }
+    }
+
+    public long getInFlightBytes() {
+        synchronized (mBudgetLock) {
+            return mInFlightBytes;
+        }
+    }
+
+    /**
+     * Blocks until {@code bytes} fit in the in-flight pixel budget. A decode larger than the
+     * whole budget is let through once nothing else is being decoded.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        synchronized (mBudgetLock) {
+            while (mInFlightBytes > 0 && mInFlightBytes + bytes > mMaxInFlightBytes) {
+                mBudgetLock.wait();
+            }
+            mInFlightBytes += bytes;
+        }
+    }
+
+    public void release(long bytes) {
+        synchronized (mBudgetLock) {
+            mInFlightBytes -= bytes;
+            mBudgetLock.notifyAll();
+        }
+    }
+}
@@ -20,20 +20,37 @@ package com.android.api.core;
 import android.os.Process;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
 public class DefaultExecutorSupplier implements ExecutorSupplier {
 
     public static final int DEFAULT_MAX_NUM_THREADS = 2 * Runtime.getRuntime().availableProcessors() + 1;
+    public static final int DEFAULT_DISK_NUM_THREADS = 2;
+    public static final int DEFAULT_DOWNLOAD_NUM_THREADS = 4;
+    public static final int DEFAULT_DNS_NUM_THREADS = 2;
+    public static final int DEFAULT_DECODE_NUM_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_DECODE_MAX_IN_FLIGHT_BYTES = Runtime.getRuntime().maxMemory() / 4;
     private final APIExecutor mNetworkExecutor;
     private final APIExecutor mImmediateNetworkExecutor;
     private final Executor mMainThreadExecutor;
+    private final Executor mDiskExecutor;
+    private final DecodeExecutor mDecodeExecutor;
+    private final Executor mDownloadSegmentExecutor;
+    private final APIExecutor mDownloadExecutor;
+    private final Executor mDnsExecutor;
 
     public DefaultExecutorSupplier() {
         ThreadFactory backgroundPriorityThreadFactory = new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND);
         mNetworkExecutor = new APIExecutor(DEFAULT_MAX_NUM_THREADS, backgroundPriorityThreadFactory);
         mImmediateNetworkExecutor = new APIExecutor(2, backgroundPriorityThreadFactory);
         mMainThreadExecutor = new MainThreadExecutor();
+        mDiskExecutor = Executors.newFixedThreadPool(DEFAULT_DISK_NUM_THREADS, backgroundPriorityThreadFactory);
+        mDecodeExecutor = new DecodeExecutor(DEFAULT_DECODE_NUM_THREADS,
+                DEFAULT_DECODE_MAX_IN_FLIGHT_BYTES, backgroundPriorityThreadFactory);
+        mDownloadSegmentExecutor = Executors.newCachedThreadPool(backgroundPriorityThreadFactory);
+        mDownloadExecutor = new APIExecutor(DEFAULT_DOWNLOAD_NUM_THREADS, backgroundPriorityThreadFactory);
+        mDnsExecutor = Executors.newFixedThreadPool(DEFAULT_DNS_NUM_THREADS, backgroundPriorityThreadFactory);
     }
 
     @Override
@@ -50,4 +67,29 @@ public class DefaultExecutorSupplier implements ExecutorSupplier {
     public Executor forMainThreadTasks() {
         return mMainThreadExecutor;
     }
+
+    @Override
+    public Executor forDiskTasks() {
+        return mDiskExecutor;
+    }
+
+    @Override
+    public DecodeExecutor forDecodeTasks() {
+        return mDecodeExecutor;
+    }
+
+    @Override
+    public Executor forDownloadSegmentTasks() {
+        return mDownloadSegmentExecutor;
+    }
+
+    @Override
+    public APIExecutor forDownloadTasks() {
+        return mDownloadExecutor;
+    }
+
+    @Override
+    public Executor forDnsTasks() {
+        return mDnsExecutor;
+    }
 }
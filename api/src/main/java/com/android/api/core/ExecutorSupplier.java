@@ -26,4 +26,14 @@ public interface ExecutorSupplier {
     APIExecutor forImmediateNetworkTasks();
 
     Executor forMainThreadTasks();
+
+    Executor forDiskTasks();
+
+    DecodeExecutor forDecodeTasks();
+
+    Executor forDownloadSegmentTasks();
+
+    APIExecutor forDownloadTasks();
+
+    Executor forDnsTasks();
 }
@@ -0,0 +1,43 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.error;
+
+import java.io.IOException;
+
+public class DigestMismatchException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String expectedDigest;
+
+    private final String actualDigest;
+
+    public DigestMismatchException(String algorithm, String expectedDigest, String actualDigest) {
+        super(algorithm + " mismatch, expected " + expectedDigest + " but was " + actualDigest);
+        this.expectedDigest = expectedDigest;
+        this.actualDigest = actualDigest;
+    }
+
+    public String getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    public String getActualDigest() {
+        return actualDigest;
+    }
+}
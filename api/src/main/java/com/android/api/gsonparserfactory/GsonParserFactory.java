@@ -26,6 +26,8 @@ import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
@@ -33,6 +35,10 @@ import okhttp3.ResponseBody;
 public final class GsonParserFactory extends Parser.Factory {
 
     private final Gson gson;
+    private final ConcurrentHashMap<Type, Parser<ResponseBody, ?>> responseBodyParsers =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, Parser<?, RequestBody>> requestBodyParsers =
+            new ConcurrentHashMap<>();
 
     public GsonParserFactory() {
         this.gson = new Gson();
@@ -44,14 +50,36 @@ public final class GsonParserFactory extends Parser.Factory {
 
     @Override
     public Parser<ResponseBody, ?> responseBodyParser(Type type) {
+        Parser<ResponseBody, ?> parser = responseBodyParsers.get(type);
+        if (parser == null) {
+            TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
+            parser = new GsonResponseBodyParser<>(gson, adapter);
+            Parser<ResponseBody, ?> existing = responseBodyParsers.putIfAbsent(type, parser);
+            if (existing != null) {
+                parser = existing;
+            }
+        }
+        return parser;
+    }
+
+    @Override
+    public Parser<ResponseBody, ? extends Iterator<?>> responseBodyStreamParser(Type type) {
         TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
-        return new GsonResponseBodyParser<>(gson, adapter);
+        return new GsonResponseBodyStreamParser<>(gson, adapter);
     }
 
     @Override
     public Parser<?, RequestBody> requestBodyParser(Type type) {
-        TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
-        return new GsonRequestBodyParser<>(gson, adapter);
+        Parser<?, RequestBody> parser = requestBodyParsers.get(type);
+        if (parser == null) {
+            TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
+            parser = new GsonRequestBodyParser<>(gson, adapter);
+            Parser<?, RequestBody> existing = requestBodyParsers.putIfAbsent(type, parser);
+            if (existing != null) {
+                parser = existing;
+            }
+        }
+        return parser;
     }
 
     @Override
@@ -0,0 +1,73 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.gsonparserfactory;
+
+import com.android.api.interfaces.Parser;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import okhttp3.ResponseBody;
+
+final class GsonResponseBodyStreamParser<T> implements Parser<ResponseBody, Iterator<T>> {
+    private final Gson gson;
+    private final TypeAdapter<T> adapter;
+
+    GsonResponseBodyStreamParser(Gson gson, TypeAdapter<T> adapter) {
+        this.gson = gson;
+        this.adapter = adapter;
+    }
+
+    @Override
+    public Iterator<T> convert(ResponseBody value) throws IOException {
+        final JsonReader jsonReader = gson.newJsonReader(value.charStream());
+        jsonReader.beginArray();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return jsonReader.hasNext();
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return adapter.read(jsonReader);
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
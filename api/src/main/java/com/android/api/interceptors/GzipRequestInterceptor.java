@@ -17,7 +17,15 @@
 
 package com.android.api.interceptors;
 
+import com.android.api.common.APIRequest;
+import com.android.api.internal.RequestProgressBody;
+
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
@@ -30,18 +38,100 @@ import okio.GzipSink;
 import okio.Okio;
 
 public class GzipRequestInterceptor implements Interceptor {
+
+    public static final long DEFAULT_MIN_SIZE = 1024;
+    private static final long MAX_IN_MEMORY_SIZE = 256 * 1024;
+    private static final Collection<String> DEFAULT_COMPRESSIBLE_TYPES = Arrays.asList(
+            "text/*",
+            "application/json",
+            "application/xml",
+            "application/javascript",
+            "application/x-www-form-urlencoded",
+            "application/graphql");
+
+    private volatile long minSize = DEFAULT_MIN_SIZE;
+    private volatile boolean chunkedStreaming;
+    private final Set<String> compressibleTypes = new CopyOnWriteArraySet<>(DEFAULT_COMPRESSIBLE_TYPES);
+
+    public GzipRequestInterceptor setMinSize(long minSize) {
+        this.minSize = minSize;
+        return this;
+    }
+
+    public GzipRequestInterceptor setChunkedStreaming(boolean chunkedStreaming) {
+        this.chunkedStreaming = chunkedStreaming;
+        return this;
+    }
+
+    public GzipRequestInterceptor setCompressibleTypes(String... types) {
+        compressibleTypes.clear();
+        return addCompressibleTypes(types);
+    }
+
+    public GzipRequestInterceptor addCompressibleTypes(String... types) {
+        for (String type : types) {
+            compressibleTypes.add(type.toLowerCase(Locale.US));
+        }
+        return this;
+    }
+
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request originalRequest = chain.request();
-        if (originalRequest.body() == null || originalRequest.header("Content-Encoding") != null) {
+        RequestBody body = originalRequest.body();
+        if (body == null || originalRequest.header("Content-Encoding") != null
+                || !shouldCompress(originalRequest, body)) {
             return chain.proceed(originalRequest);
         }
 
-        Request compressedRequest = originalRequest.newBuilder()
+        // progress and throttling have to follow the compressed bytes that go out
+        RequestProgressBody progressBody = null;
+        if (body instanceof RequestProgressBody) {
+            progressBody = (RequestProgressBody) body;
+            body = progressBody.getRequestBody();
+        }
+
+        RequestBody compressedBody;
+        long contentLength = body.contentLength();
+        if (!chunkedStreaming && contentLength != -1 && contentLength <= MAX_IN_MEMORY_SIZE) {
+            compressedBody = forceContentLength(gzip(body));
+        } else {
+            // unknown length, the body is compressed while it is written out
+            compressedBody = gzip(body);
+        }
+        return chain.proceed(originalRequest.newBuilder()
                 .header("Content-Encoding", "gzip")
-                .method(originalRequest.method(), forceContentLength(gzip(originalRequest.body())))
-                .build();
-        return chain.proceed(compressedRequest);
+                .method(originalRequest.method(), progressBody != null
+                        ? progressBody.withRequestBody(compressedBody) : compressedBody)
+                .build());
+    }
+
+    private boolean shouldCompress(Request request, RequestBody body) throws IOException {
+        if (request.tag() instanceof APIRequest) {
+            Boolean requestCompression = ((APIRequest) request.tag()).getRequestCompression();
+            if (requestCompression != null) {
+                return requestCompression;
+            }
+        }
+        long contentLength = body.contentLength();
+        if (contentLength != -1 && contentLength < minSize) {
+            return false;
+        }
+        return isCompressible(body.contentType());
+    }
+
+    private boolean isCompressible(MediaType mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        String type = mediaType.type().toLowerCase(Locale.US);
+        String subtype = mediaType.subtype().toLowerCase(Locale.US);
+        if (compressibleTypes.contains(type + "/" + subtype) || compressibleTypes.contains(type + "/*")) {
+            return true;
+        }
+        // structured syntax suffixes such as application/vnd.api+json
+        int plus = subtype.lastIndexOf('+');
+        return plus != -1 && compressibleTypes.contains(type + "/" + subtype.substring(plus + 1));
     }
 
     private RequestBody forceContentLength(final RequestBody requestBody) throws IOException {
@@ -85,4 +175,4 @@ public class GzipRequestInterceptor implements Interceptor {
             }
         };
     }
-}
\ No newline at end of file
+}
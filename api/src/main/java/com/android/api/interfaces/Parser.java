@@ -22,6 +22,7 @@ package com.android.api.interfaces;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.Iterator;
 
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
@@ -36,6 +37,10 @@ public interface Parser<F, T> {
             return null;
         }
 
+        public Parser<ResponseBody, ? extends Iterator<?>> responseBodyStreamParser(Type type) {
+            return null;
+        }
+
         public Parser<?, RequestBody> requestBodyParser(Type type) {
             return null;
         }
@@ -25,7 +25,9 @@ import android.widget.ImageView;
 
 import com.android.api.API;
 import com.android.api.cache.APIBitmapCache;
+import com.android.api.cache.BitmapPool;
 import com.android.api.common.APIRequest;
+import com.android.api.core.Core;
 import com.android.api.error.APIError;
 import com.android.api.interfaces.BitmapRequestListener;
 
@@ -46,6 +48,10 @@ public class APIImageLoader {
 
     private final ImageCache mCache;
 
+    private ImageCache mDiskCache;
+
+    private BitmapPool mBitmapPool;
+
     private final HashMap<String, BatchedImageRequest> mInFlightRequests =
             new HashMap<String, BatchedImageRequest>();
 
@@ -93,6 +99,29 @@ public class APIImageLoader {
         return mCache;
     }
 
+    public void setDiskImageCache(ImageCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    public ImageCache getDiskImageCache() {
+        return mDiskCache;
+    }
+
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    public void releaseBitmap(Bitmap bitmap) {
+        final BitmapPool bitmapPool = mBitmapPool;
+        if (bitmapPool != null) {
+            bitmapPool.put(bitmap);
+        }
+    }
+
     public static ImageListener getImageListener(final ImageView view,
                                                  final int defaultImageResId,
                                                  final int errorImageResId) {
@@ -189,7 +218,7 @@ public class APIImageLoader {
                 .setBitmapOptions(mBitmapOptions)
                 .build();
 
-        APIRequest.getAsBitmap(new BitmapRequestListener() {
+        final BitmapRequestListener bitmapRequestListener = new BitmapRequestListener() {
             @Override
             public void onResponse(Bitmap response) {
                 onGetImageSuccess(cacheKey, response);
@@ -199,11 +228,43 @@ public class APIImageLoader {
             public void onError(APIError apiError) {
                 onGetImageError(cacheKey, apiError);
             }
-        });
+        };
+
+        if (mDiskCache == null) {
+            APIRequest.getAsBitmap(bitmapRequestListener);
+        } else {
+            getFromDiskCache(APIRequest, bitmapRequestListener, cacheKey);
+        }
 
         return APIRequest;
     }
 
+    private void getFromDiskCache(final APIRequest request,
+                                  final BitmapRequestListener bitmapRequestListener,
+                                  final String cacheKey) {
+        final ImageCache diskCache = mDiskCache;
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = diskCache.getBitmap(cacheKey);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        BatchedImageRequest batchedRequest = mInFlightRequests.get(cacheKey);
+                        if (batchedRequest == null || batchedRequest.mRequest != request) {
+                            return;
+                        }
+                        if (bitmap != null) {
+                            deliverImage(cacheKey, bitmap);
+                        } else {
+                            request.getAsBitmap(bitmapRequestListener);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
     public void setBitmapDecodeOptions(BitmapFactory.Options bitmapOptions) {
         mBitmapOptions = bitmapOptions;
     }
@@ -214,6 +275,13 @@ public class APIImageLoader {
 
 
     protected void onGetImageSuccess(String cacheKey, Bitmap response) {
+        if (mDiskCache != null) {
+            mDiskCache.putBitmap(cacheKey, response);
+        }
+        deliverImage(cacheKey, response);
+    }
+
+    private void deliverImage(String cacheKey, Bitmap response) {
         mCache.putBitmap(cacheKey, response);
 
         BatchedImageRequest request = mInFlightRequests.remove(cacheKey);
@@ -19,10 +19,14 @@ package com.android.api.internal;
 
 import com.android.api.common.APIRequest;
 import com.android.api.common.Priority;
+import com.android.api.core.APIExecutor;
 import com.android.api.core.Core;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -31,7 +35,12 @@ public class APIRequestQueue {
 
     private final Set<APIRequest> mCurrentRequests =
             Collections.newSetFromMap(new ConcurrentHashMap<APIRequest, Boolean>());
+    private final ConcurrentHashMap<Object, Set<APIRequest>> mTaggedRequests =
+            new ConcurrentHashMap<Object, Set<APIRequest>>();
+    private final HashMap<String, BatchedRequest> mInFlightRequests =
+            new HashMap<String, BatchedRequest>();
     private AtomicInteger mSequenceGenerator = new AtomicInteger();
+    private volatile boolean mRequestCoalescingEnabled = false;
     private static APIRequestQueue sInstance = null;
 
     public static void initialize() {
@@ -62,6 +71,7 @@ public class APIRequestQueue {
                     if (request.isCanceled()) {
                         request.destroy();
                         iterator.remove();
+                        removeFromTagIndex(request);
                     }
                 }
             }
@@ -71,18 +81,12 @@ public class APIRequestQueue {
     }
 
     public void cancelAll(boolean forceCancel) {
-        try {
-            for (Iterator<APIRequest> iterator = mCurrentRequests.iterator(); iterator.hasNext(); ) {
-                APIRequest request = iterator.next();
-                request.cancel(forceCancel);
-                if (request.isCanceled()) {
-                    request.destroy();
-                    iterator.remove();
-                }
+        cancel(new RequestFilter() {
+            @Override
+            public boolean apply(APIRequest request) {
+                return true;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        }, forceCancel);
     }
 
     public void cancelRequestWithGivenTag(final Object tag, final boolean forceCancel) {
@@ -90,12 +94,23 @@ public class APIRequestQueue {
             if (tag == null) {
                 return;
             }
-            cancel(new RequestFilter() {
-                @Override
-                public boolean apply(APIRequest request) {
-                    return isRequestWithTheGivenTag(request, tag);
+            final Set<APIRequest> taggedRequests = mTaggedRequests.get(tag);
+            if (taggedRequests == null) {
+                return;
+            }
+            for (Iterator<APIRequest> iterator = taggedRequests.iterator(); iterator.hasNext(); ) {
+                APIRequest request = iterator.next();
+                if (!mCurrentRequests.contains(request)) {
+                    iterator.remove();
+                    continue;
+                }
+                request.cancel(forceCancel);
+                if (request.isCanceled()) {
+                    request.destroy();
+                    mCurrentRequests.remove(request);
+                    removeFromTagIndex(request);
                 }
-            }, forceCancel);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -105,24 +120,47 @@ public class APIRequestQueue {
         return mSequenceGenerator.incrementAndGet();
     }
 
+    public void setRequestCoalescingEnabled(boolean enabled) {
+        mRequestCoalescingEnabled = enabled;
+    }
+
+    public boolean isRequestCoalescingEnabled() {
+        return mRequestCoalescingEnabled;
+    }
+
     public APIRequest addRequest(APIRequest request) {
+        return addRequest(request, null);
+    }
+
+    public APIRequest addRequest(APIRequest request, APIExecutor executor) {
+        request.setSequenceNumber(getSequenceNumber());
+        return addRequest(request, executor, new InternalRunnable(request));
+    }
+
+    // the runnable reads its sequence number from the request, so that is assigned first
+    APIRequest addRequest(APIRequest request, APIExecutor executor, InternalRunnable runnable) {
         try {
             mCurrentRequests.add(request);
+            addToTagIndex(request);
         } catch (Exception e) {
             e.printStackTrace();
         }
         try {
-            request.setSequenceNumber(getSequenceNumber());
-            if (request.getPriority() == Priority.IMMEDIATE) {
+            if (attachToInFlightRequest(request)) {
+                return request;
+            }
+            if (executor != null) {
+                request.setFuture(executor.submit(runnable));
+            } else if (request.getPriority() == Priority.IMMEDIATE) {
                 request.setFuture(Core.getInstance()
                         .getExecutorSupplier()
                         .forImmediateNetworkTasks()
-                        .submit(new InternalRunnable(request)));
+                        .submit(runnable));
             } else {
                 request.setFuture(Core.getInstance()
                         .getExecutorSupplier()
                         .forNetworkTasks()
-                        .submit(new InternalRunnable(request)));
+                        .submit(runnable));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -132,16 +170,123 @@ public class APIRequestQueue {
 
     public void finish(APIRequest request) {
         try {
-            mCurrentRequests.remove(request);
+            if (mCurrentRequests.remove(request)) {
+                removeFromTagIndex(request);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void addToTagIndex(APIRequest request) {
+        final Object tag = request.getTag();
+        if (tag == null) {
+            return;
+        }
+        while (true) {
+            Set<APIRequest> taggedRequests = mTaggedRequests.get(tag);
+            if (taggedRequests == null) {
+                taggedRequests = Collections.newSetFromMap(new ConcurrentHashMap<APIRequest, Boolean>());
+                Set<APIRequest> previous = mTaggedRequests.putIfAbsent(tag, taggedRequests);
+                if (previous != null) {
+                    taggedRequests = previous;
+                }
+            }
+            taggedRequests.add(request);
+            // the set may have been unlinked as empty while we were adding to it
+            if (mTaggedRequests.get(tag) == taggedRequests) {
+                return;
+            }
+        }
+    }
+
+    private void removeFromTagIndex(APIRequest request) {
+        final Object tag = request.getTag();
+        if (tag == null) {
+            return;
+        }
+        final Set<APIRequest> taggedRequests = mTaggedRequests.get(tag);
+        if (taggedRequests == null) {
+            return;
+        }
+        taggedRequests.remove(request);
+        if (taggedRequests.isEmpty() && mTaggedRequests.remove(tag, taggedRequests)) {
+            for (APIRequest remainingRequest : taggedRequests) {
+                if (mCurrentRequests.contains(remainingRequest)) {
+                    addToTagIndex(remainingRequest);
+                }
+            }
+        }
+    }
+
+    private boolean attachToInFlightRequest(APIRequest request) {
+        if (!mRequestCoalescingEnabled) {
+            return false;
+        }
+        final String coalescingKey = request.buildCoalescingKey();
+        if (coalescingKey == null) {
+            return false;
+        }
+        synchronized (mInFlightRequests) {
+            BatchedRequest batchedRequest = mInFlightRequests.get(coalescingKey);
+            if (batchedRequest == null) {
+                request.setCoalescingKey(coalescingKey);
+                mInFlightRequests.put(coalescingKey, new BatchedRequest(request));
+                return false;
+            }
+            request.setRunning(true);
+            batchedRequest.addRequest(request);
+            return true;
+        }
+    }
+
+    public List<APIRequest> removeCoalescedRequests(APIRequest request) {
+        final String coalescingKey = request.getCoalescingKey();
+        if (coalescingKey == null) {
+            return Collections.emptyList();
+        }
+        synchronized (mInFlightRequests) {
+            BatchedRequest batchedRequest = mInFlightRequests.get(coalescingKey);
+            if (batchedRequest == null || batchedRequest.mRequest != request) {
+                return Collections.emptyList();
+            }
+            mInFlightRequests.remove(coalescingKey);
+            return batchedRequest.mRequests;
+        }
+    }
+
+    public boolean detachCancelledRequest(APIRequest request) {
+        final String coalescingKey = request.getCoalescingKey();
+        if (coalescingKey == null) {
+            return false;
+        }
+        synchronized (mInFlightRequests) {
+            BatchedRequest batchedRequest = mInFlightRequests.get(coalescingKey);
+            if (batchedRequest == null || batchedRequest.mRequest != request) {
+                return false;
+            }
+            for (APIRequest coalescedRequest : batchedRequest.mRequests) {
+                if (!coalescedRequest.isCanceled()) {
+                    return true;
+                }
+            }
+            // nobody is left waiting, so later requests must not join the dying call
+            mInFlightRequests.remove(coalescingKey);
+            return false;
+        }
+    }
+
     public boolean isRequestRunning(Object tag) {
         try {
-            for (APIRequest request : mCurrentRequests) {
-                if (isRequestWithTheGivenTag(request, tag) && request.isRunning()) {
+            if (tag == null) {
+                return false;
+            }
+            final Set<APIRequest> taggedRequests = mTaggedRequests.get(tag);
+            if (taggedRequests == null) {
+                return false;
+            }
+            for (APIRequest request : taggedRequests) {
+                if (request.isRunning() && mCurrentRequests.contains(request)) {
                     return true;
                 }
             }
@@ -151,16 +296,19 @@ public class APIRequestQueue {
         return false;
     }
 
-    private boolean isRequestWithTheGivenTag(APIRequest request, Object tag) {
-        if (request.getTag() == null) {
-            return false;
+    private static class BatchedRequest {
+
+        private final APIRequest mRequest;
+
+        private final LinkedList<APIRequest> mRequests = new LinkedList<APIRequest>();
+
+        BatchedRequest(APIRequest request) {
+            mRequest = request;
         }
-        if (request.getTag() instanceof String && tag instanceof String) {
-            final String tempRequestTag = (String) request.getTag();
-            final String tempTag = (String) tag;
-            return tempRequestTag.equals(tempTag);
+
+        void addRequest(APIRequest request) {
+            mRequests.add(request);
         }
-        return request.getTag().equals(tag);
     }
 
 }
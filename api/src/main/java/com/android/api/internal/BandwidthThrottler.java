@@ -0,0 +1,123 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.common.ConnectionClassManager;
+import com.android.api.common.Priority;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class BandwidthThrottler {
+
+    private static final TokenBucket sGlobalBucket = new TokenBucket();
+    private static final TokenBucket[] sPriorityBuckets = new TokenBucket[Priority.values().length];
+    private static volatile long sGlobalMaxBytesPerSecond;
+    // replaced as a whole, so acquire() reads the per priority limits without a lock
+    private static final AtomicReference<PriorityLimits> sPriorityLimits =
+            new AtomicReference<>(new PriorityLimits(new long[Priority.values().length],
+                    new float[Priority.values().length], 0));
+
+    static {
+        for (int i = 0; i < sPriorityBuckets.length; i++) {
+            sPriorityBuckets[i] = new TokenBucket();
+        }
+    }
+
+    private final TokenBucket mRequestBucket = new TokenBucket();
+    private final long mRequestMaxBytesPerSecond;
+    private final int mPriority;
+
+    private BandwidthThrottler(long requestMaxBytesPerSecond, Priority priority) {
+        this.mRequestMaxBytesPerSecond = requestMaxBytesPerSecond;
+        this.mPriority = priority.ordinal();
+    }
+
+    public static void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        sGlobalMaxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public static synchronized void setMaxBytesPerSecond(Priority priority, long maxBytesPerSecond) {
+        final PriorityLimits limits = sPriorityLimits.get();
+        final long[] maxBytes = limits.mMaxBytesPerSecond.clone();
+        maxBytes[priority.ordinal()] = maxBytesPerSecond;
+        sPriorityLimits.set(new PriorityLimits(maxBytes, limits.mFractions, limits.mBandwidthKbps));
+    }
+
+    public static synchronized void setBandwidthFraction(Priority priority, float fraction) {
+        final PriorityLimits limits = sPriorityLimits.get();
+        final float[] fractions = limits.mFractions.clone();
+        fractions[priority.ordinal()] = fraction;
+        sPriorityLimits.set(new PriorityLimits(limits.mMaxBytesPerSecond, fractions,
+                limits.mBandwidthKbps));
+    }
+
+    public static BandwidthThrottler forRequest(APIRequest request) {
+        final Priority priority = request.getPriority() != null ? request.getPriority() : Priority.MEDIUM;
+        if (request.getMaxBytesPerSecond() <= 0 && sGlobalMaxBytesPerSecond <= 0
+                && getPriorityMaxBytesPerSecond(priority.ordinal()) <= 0) {
+            return null;
+        }
+        return new BandwidthThrottler(request.getMaxBytesPerSecond(), priority);
+    }
+
+    public void acquire(long bytes) throws InterruptedIOException {
+        mRequestBucket.acquire(bytes, mRequestMaxBytesPerSecond);
+        sPriorityBuckets[mPriority].acquire(bytes, getPriorityMaxBytesPerSecond(mPriority));
+        sGlobalBucket.acquire(bytes, sGlobalMaxBytesPerSecond);
+    }
+
+    static long getPriorityMaxBytesPerSecond(int priority) {
+        PriorityLimits limits = sPriorityLimits.get();
+        final int bandwidthKbps = ConnectionClassManager.getInstance().getCurrentBandwidth();
+        if (limits.mBandwidthKbps != bandwidthKbps) {
+            final PriorityLimits updated = new PriorityLimits(limits.mMaxBytesPerSecond,
+                    limits.mFractions, bandwidthKbps);
+            // losing to a setter is fine, the next read picks up its limits
+            sPriorityLimits.compareAndSet(limits, updated);
+            limits = updated;
+        }
+        return limits.mLimits[priority];
+    }
+
+    private static final class PriorityLimits {
+
+        private final long[] mMaxBytesPerSecond;
+        private final float[] mFractions;
+        private final int mBandwidthKbps;
+        private final long[] mLimits;
+
+        PriorityLimits(long[] maxBytesPerSecond, float[] fractions, int bandwidthKbps) {
+            this.mMaxBytesPerSecond = maxBytesPerSecond;
+            this.mFractions = fractions;
+            this.mBandwidthKbps = bandwidthKbps;
+            this.mLimits = new long[maxBytesPerSecond.length];
+            for (int i = 0; i < mLimits.length; i++) {
+                long limit = maxBytesPerSecond[i];
+                if (fractions[i] > 0 && bandwidthKbps > 0) {
+                    final long fractionBytesPerSecond = Math.max(1,
+                            (long) (bandwidthKbps * 1000 / 8 * fractions[i]));
+                    limit = limit > 0 ? Math.min(limit, fractionBytesPerSecond) : fractionBytesPerSecond;
+                }
+                mLimits[i] = limit;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+
+import com.android.api.core.Core;
+import com.android.api.model.DnsMetrics;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Dns;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+public class CachingDns implements Dns {
+
+    public static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+    public static final long DEFAULT_MAX_STALE_MILLIS = 10 * 60 * 1000;
+    // entries older than this share of the ttl are refreshed in the background on use
+    public static final int MAX_ENTRIES = 256;
+
+    private static final float REFRESH_FRACTION = 0.75f;
+
+    private static CachingDns sInstance = null;
+
+    private final Executor mExecutor;
+    private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FutureTask<List<InetAddress>>> mLookups =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> mRefreshes = new ConcurrentHashMap<>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mStaleHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mLookupCount = new AtomicLong();
+    private final AtomicLong mLookupMillis = new AtomicLong();
+    // bumped whenever the cached answers become invalid, lookups started before must not store theirs
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private BroadcastReceiver mConnectivityReceiver;
+    private volatile Dns mDelegate;
+    private volatile long mTtlMillis = DEFAULT_TTL_MILLIS;
+    private volatile long mMaxStaleMillis = DEFAULT_MAX_STALE_MILLIS;
+
+    public CachingDns(Dns delegate, Executor executor) {
+        this.mDelegate = delegate;
+        this.mExecutor = executor;
+    }
+
+    public static CachingDns getInstance() {
+        if (sInstance == null) {
+            synchronized (CachingDns.class) {
+                if (sInstance == null) {
+                    sInstance = new CachingDns(Dns.SYSTEM, null);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public void setDelegate(Dns delegate) {
+        mDelegate = delegate;
+        clear();
+    }
+
+    public void setTtl(long ttlMillis, long maxStaleMillis) {
+        mTtlMillis = ttlMillis;
+        mMaxStaleMillis = maxStaleMillis;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = mEntries.get(hostname);
+        if (entry != null) {
+            long age = now() - entry.mResolvedAt;
+            if (age < mTtlMillis) {
+                mHits.incrementAndGet();
+                if (age >= mTtlMillis * REFRESH_FRACTION) {
+                    refresh(hostname);
+                }
+                return entry.mAddresses;
+            }
+            if (age < mTtlMillis + mMaxStaleMillis) {
+                // answer right away and let the refresh update the entry for the next lookup
+                mStaleHits.incrementAndGet();
+                refresh(hostname);
+                return entry.mAddresses;
+            }
+            // too stale to serve, it must not outlive a lookup that fails
+            mEntries.remove(hostname, entry);
+        }
+        mMisses.incrementAndGet();
+        return resolve(hostname);
+    }
+
+    public void prefetch(Collection<String> hostnames) {
+        for (String hostname : hostnames) {
+            Entry entry = mEntries.get(hostname);
+            if (entry == null || now() - entry.mResolvedAt >= mTtlMillis * REFRESH_FRACTION) {
+                refresh(hostname);
+            }
+        }
+    }
+
+    public void invalidate(String hostname) {
+        mEntries.remove(hostname);
+    }
+
+    public void clear() {
+        mGeneration.incrementAndGet();
+        mEntries.clear();
+        mLookups.clear();
+    }
+
+    public Interceptor getInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                try {
+                    return chain.proceed(chain.request());
+                } catch (IOException e) {
+                    if (isConnectFailure(e)) {
+                        // every cached address failed, the next call resolves the host again
+                        invalidate(chain.request().url().host());
+                    }
+                    throw e;
+                }
+            }
+        };
+    }
+
+    public synchronized void registerConnectivityReceiver(Context context) {
+        if (mConnectivityReceiver != null) {
+            return;
+        }
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (!isInitialStickyBroadcast()) {
+                    // answers from the previous network may not be reachable from the new one
+                    clear();
+                }
+            }
+        };
+        context.getApplicationContext().registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    int getEntryCount() {
+        return mEntries.size();
+    }
+
+    public DnsMetrics getMetrics() {
+        return new DnsMetrics(mHits.get(), mStaleHits.get(), mMisses.get(), mFailures.get(),
+                mLookupCount.get(), mLookupMillis.get());
+    }
+
+    private void refresh(final String hostname) {
+        if (mRefreshes.putIfAbsent(hostname, Boolean.TRUE) != null) {
+            return;
+        }
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resolve(hostname);
+                } catch (UnknownHostException e) {
+                    // keep serving the previous answer until it is too stale
+                } finally {
+                    mRefreshes.remove(hostname);
+                }
+            }
+        });
+    }
+
+    private List<InetAddress> resolve(final String hostname) throws UnknownHostException {
+        FutureTask<List<InetAddress>> lookup = new FutureTask<>(new Callable<List<InetAddress>>() {
+            @Override
+            public List<InetAddress> call() throws Exception {
+                long startTime = now();
+                int generation = mGeneration.get();
+                try {
+                    List<InetAddress> addresses = mDelegate.lookup(hostname);
+                    Entry entry = new Entry(addresses, now());
+                    mEntries.put(hostname, entry);
+                    if (mGeneration.get() != generation) {
+                        mEntries.remove(hostname, entry);
+                    }
+                    if (mEntries.size() > MAX_ENTRIES) {
+                        trim();
+                    }
+                    return addresses;
+                } catch (UnknownHostException e) {
+                    mFailures.incrementAndGet();
+                    throw e;
+                } finally {
+                    mLookupCount.incrementAndGet();
+                    mLookupMillis.addAndGet(now() - startTime);
+                }
+            }
+        });
+        // concurrent lookups of the same host wait for the one already in flight
+        FutureTask<List<InetAddress>> inFlight = mLookups.putIfAbsent(hostname, lookup);
+        if (inFlight == null) {
+            inFlight = lookup;
+            try {
+                lookup.run();
+            } finally {
+                mLookups.remove(hostname, lookup);
+            }
+        }
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            UnknownHostException unknownHostException = new UnknownHostException(hostname);
+            unknownHostException.initCause(e.getCause());
+            throw unknownHostException;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(hostname);
+        }
+    }
+
+    private void trim() {
+        // hosts that are no longer looked up leave once they are too stale to serve, then the oldest
+        final long now = now();
+        Map.Entry<String, Entry> oldest = null;
+        for (Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            if (now - mapEntry.getValue().mResolvedAt >= mTtlMillis + mMaxStaleMillis) {
+                iterator.remove();
+            } else if (oldest == null || mapEntry.getValue().mResolvedAt < oldest.getValue().mResolvedAt) {
+                oldest = mapEntry;
+            }
+        }
+        if (mEntries.size() > MAX_ENTRIES && oldest != null) {
+            mEntries.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private static boolean isConnectFailure(IOException e) {
+        // a read timeout also invalidates the host, which only costs one more lookup
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Executor getExecutor() {
+        return mExecutor != null ? mExecutor : Core.getInstance().getExecutorSupplier().forDnsTasks();
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static final class Entry {
+
+        private final List<InetAddress> mAddresses;
+        private final long mResolvedAt;
+
+        Entry(List<InetAddress> addresses, long resolvedAt) {
+            this.mAddresses = addresses;
+            this.mResolvedAt = resolvedAt;
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.core.Core;
+import com.android.api.utils.Utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Chunk protocol: every chunk is a multipart POST to the request url carrying all the
+ * multipart parameters, with the file part holding only the bytes of that chunk and the
+ * headers X-Upload-Id, X-Upload-Offset, X-Upload-Length (whole file), X-Upload-Chunk-Index
+ * and X-Upload-Chunk-Count. A 2xx response acknowledges the chunk. Chunks may arrive out of
+ * order and more than once, except the last one which is only sent after all the others
+ * were acknowledged; its response is delivered as the response of the request.
+ */
+final class ChunkedUploader {
+
+    public static final String HEADER_UPLOAD_ID = "X-Upload-Id";
+    public static final String HEADER_UPLOAD_OFFSET = "X-Upload-Offset";
+    public static final String HEADER_UPLOAD_LENGTH = "X-Upload-Length";
+    public static final String HEADER_UPLOAD_CHUNK_INDEX = "X-Upload-Chunk-Index";
+    public static final String HEADER_UPLOAD_CHUNK_COUNT = "X-Upload-Chunk-Count";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final APIRequest mRequest;
+    private final OkHttpClient mOkHttpClient;
+    private final Request mOkHttpRequest;
+    private final String mFileKey;
+    private final File mFile;
+    private final MediaType mMediaType;
+    private final long mTotalBytes;
+    private final long mChunkSize;
+    private final int mChunkCount;
+    private final UploadCheckpoint mCheckpoint;
+    private final ProgressDispatcher mProgressDispatcher;
+    private final BandwidthThrottler mBandwidthThrottler;
+    private final AtomicLong mBytesUploaded = new AtomicLong();
+    private final List<Integer> mPendingChunks = new ArrayList<>();
+    private final AtomicInteger mNextPendingChunk = new AtomicInteger();
+    private final AtomicReference<Response> mRejectedResponse = new AtomicReference<>();
+    private final List<Call> mCalls = new ArrayList<>();
+    private volatile boolean mStopped;
+
+    private ChunkedUploader(APIRequest<?> request, OkHttpClient okHttpClient, Request okHttpRequest,
+                            Map.Entry<String, File> filePart) {
+        this.mRequest = request;
+        this.mOkHttpClient = okHttpClient;
+        this.mOkHttpRequest = okHttpRequest;
+        this.mFileKey = filePart.getKey();
+        this.mFile = filePart.getValue();
+        this.mMediaType = MediaType.parse(Utils.getMimeType(mFile.getName()));
+        this.mTotalBytes = mFile.length();
+        this.mChunkSize = request.getUploadChunkSize();
+        this.mChunkCount = (int) Math.max(1, (mTotalBytes + mChunkSize - 1) / mChunkSize);
+        this.mCheckpoint = UploadCheckpoint.load(request.getUrl(), mFile, mChunkSize);
+        this.mProgressDispatcher = new ProgressDispatcher(request.getUploadProgressListener() != null
+                ? new UploadProgressHandler(request.getUploadProgressListener()) : null,
+                request.getProgressSnapshot());
+        this.mBandwidthThrottler = BandwidthThrottler.forRequest(request);
+    }
+
+    static Response upload(APIRequest<?> request, OkHttpClient okHttpClient,
+                           Request okHttpRequest) throws IOException {
+        Map<String, File> multiPartFileMap = request.getMultiPartFileMap();
+        if (multiPartFileMap.size() != 1 || request.getUploadChunkSize() <= 0) {
+            throw new IOException("Chunked upload needs exactly one multipart file");
+        }
+        if (!request.getMultiPartStreamMap().isEmpty()) {
+            throw new IOException("Chunked upload cannot replay multipart streams");
+        }
+        return new ChunkedUploader(request, okHttpClient, okHttpRequest,
+                multiPartFileMap.entrySet().iterator().next()).upload();
+    }
+
+    private Response upload() throws IOException {
+        for (int i = 0; i < mChunkCount - 1; i++) {
+            if (mCheckpoint.isAcknowledged(i)) {
+                mBytesUploaded.addAndGet(mChunkSize);
+            } else {
+                mPendingChunks.add(i);
+            }
+        }
+        mProgressDispatcher.update(mBytesUploaded.get(), mTotalBytes, false);
+        final int workers = Math.min(mRequest.getUploadParallelism(), mPendingChunks.size());
+        final List<FutureTask<Void>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            tasks.add(new FutureTask<>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    uploadPendingChunks();
+                    return null;
+                }
+            }));
+        }
+        boolean completed = false;
+        try {
+            for (int i = 1; i < tasks.size(); i++) {
+                Core.getInstance().getExecutorSupplier().forDownloadSegmentTasks()
+                        .execute(tasks.get(i));
+            }
+            if (!tasks.isEmpty()) {
+                tasks.get(0).run();
+            }
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            Response response = mRejectedResponse.get();
+            if (response == null) {
+                response = uploadChunk(mChunkCount - 1);
+                if (response.isSuccessful()) {
+                    mCheckpoint.delete();
+                    mProgressDispatcher.update(mTotalBytes, mTotalBytes, true);
+                }
+            }
+            completed = true;
+            return response;
+        } finally {
+            if (!completed) {
+                mStopped = true;
+                synchronized (mCalls) {
+                    for (Call call : mCalls) {
+                        call.cancel();
+                    }
+                }
+            }
+        }
+    }
+
+    private void uploadPendingChunks() throws IOException {
+        int next;
+        while (!mStopped && (next = mNextPendingChunk.getAndIncrement()) < mPendingChunks.size()) {
+            int chunkIndex = mPendingChunks.get(next);
+            Response response;
+            try {
+                response = uploadChunk(chunkIndex);
+            } catch (IOException e) {
+                mStopped = true;
+                throw e;
+            }
+            if (!response.isSuccessful()) {
+                // the server refused the chunk, hand its response back as the result
+                mStopped = true;
+                if (!mRejectedResponse.compareAndSet(null, response)) {
+                    response.close();
+                }
+                return;
+            }
+            response.close();
+            mCheckpoint.acknowledge(chunkIndex);
+        }
+    }
+
+    private Response uploadChunk(int chunkIndex) throws IOException {
+        if (mRequest.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+        long offset = chunkIndex * mChunkSize;
+        long length = Math.min(mChunkSize, mTotalBytes - offset);
+        Request okHttpRequest = mOkHttpRequest.newBuilder()
+                .post(mRequest.getMultiPartRequestBody(mFileKey, new ChunkRequestBody(offset, length)))
+                .header(HEADER_UPLOAD_ID, mCheckpoint.getUploadId())
+                .header(HEADER_UPLOAD_OFFSET, String.valueOf(offset))
+                .header(HEADER_UPLOAD_LENGTH, String.valueOf(mTotalBytes))
+                .header(HEADER_UPLOAD_CHUNK_INDEX, String.valueOf(chunkIndex))
+                .header(HEADER_UPLOAD_CHUNK_COUNT, String.valueOf(mChunkCount))
+                .build();
+        Call call = mOkHttpClient.newCall(okHttpRequest);
+        synchronized (mCalls) {
+            mCalls.add(call);
+        }
+        // cancelling the request reaches every chunk in flight, not only the latest one
+        mRequest.addCall(call);
+        return call.execute();
+    }
+
+    private final class ChunkRequestBody extends RequestBody {
+
+        private final long mOffset;
+        private final long mLength;
+        private long mBytesWritten;
+
+        ChunkRequestBody(long offset, long length) {
+            this.mOffset = offset;
+            this.mLength = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mMediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mLength;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // a retried write must not count the same bytes twice
+            mBytesUploaded.addAndGet(-mBytesWritten);
+            mBytesWritten = 0;
+            FileInputStream inputStream = new FileInputStream(mFile);
+            try {
+                inputStream.getChannel().position(mOffset);
+                Source source = Okio.source(inputStream);
+                Buffer buffer = new Buffer();
+                long remaining = mLength;
+                while (remaining > 0) {
+                    long read = source.read(buffer, Math.min(BUFFER_SIZE, remaining));
+                    if (read == -1) {
+                        throw new EOFException();
+                    }
+                    if (mBandwidthThrottler != null) {
+                        mBandwidthThrottler.acquire(read);
+                    }
+                    sink.write(buffer, read);
+                    remaining -= read;
+                    mBytesWritten += read;
+                    mProgressDispatcher.update(mBytesUploaded.addAndGet(read), mTotalBytes, false);
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import okhttp3.OkHttpClient;
+
+final class ClientRegistry {
+
+    private static OkHttpClient sBaseClient;
+    private static OkHttpClient sDownloadClient;
+    private static OkHttpClient sSingleAttemptClient;
+    // keyed by the caller's client, entries go away once it is no longer referenced
+    private static final Map<OkHttpClient, OkHttpClient> sClients = new WeakHashMap<>();
+    private static final Map<OkHttpClient, OkHttpClient> sDownloadClients = new WeakHashMap<>();
+    private static final Map<OkHttpClient, OkHttpClient> sSingleAttemptClients = new WeakHashMap<>();
+
+    private ClientRegistry() {
+
+    }
+
+    static synchronized OkHttpClient getClient(OkHttpClient customClient) {
+        OkHttpClient baseClient = getBaseClient();
+        if (customClient == null) {
+            return baseClient;
+        }
+        OkHttpClient client = sClients.get(customClient);
+        if (client == null) {
+            client = customClient.newBuilder().cache(baseClient.cache()).build();
+            sClients.put(customClient, client);
+        }
+        return client;
+    }
+
+    static synchronized OkHttpClient getDownloadClient(OkHttpClient customClient) {
+        OkHttpClient baseClient = getBaseClient();
+        if (customClient == null) {
+            if (sDownloadClient == null) {
+                sDownloadClient = baseClient.newBuilder()
+                        .addNetworkInterceptor(DownloadProgressInterceptor.INSTANCE)
+                        .build();
+            }
+            return sDownloadClient;
+        }
+        OkHttpClient client = sDownloadClients.get(customClient);
+        if (client == null) {
+            client = getClient(customClient).newBuilder()
+                    .addNetworkInterceptor(DownloadProgressInterceptor.INSTANCE)
+                    .build();
+            sDownloadClients.put(customClient, client);
+        }
+        return client;
+    }
+
+    static synchronized OkHttpClient getSingleAttemptClient(OkHttpClient customClient) {
+        // streamed multipart parts are read once, a silent retry would find them consumed
+        OkHttpClient baseClient = getBaseClient();
+        if (customClient == null) {
+            if (sSingleAttemptClient == null) {
+                sSingleAttemptClient = baseClient.newBuilder()
+                        .retryOnConnectionFailure(false)
+                        .build();
+            }
+            return sSingleAttemptClient;
+        }
+        OkHttpClient client = sSingleAttemptClients.get(customClient);
+        if (client == null) {
+            client = getClient(customClient).newBuilder()
+                    .retryOnConnectionFailure(false)
+                    .build();
+            sSingleAttemptClients.put(customClient, client);
+        }
+        return client;
+    }
+
+    private static OkHttpClient getBaseClient() {
+        OkHttpClient baseClient = InternalNetworking.getClient();
+        if (baseClient != sBaseClient) {
+            // derived clients share the cache of the base client, rebuild them when it changes
+            sBaseClient = baseClient;
+            sDownloadClient = null;
+            sSingleAttemptClient = null;
+            sClients.clear();
+            sDownloadClients.clear();
+            sSingleAttemptClients.clear();
+        }
+        return baseClient;
+    }
+
+}
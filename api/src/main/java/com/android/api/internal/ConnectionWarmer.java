@@ -0,0 +1,230 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+import com.android.api.common.APIRequest;
+import com.android.api.common.Priority;
+import com.android.api.core.Core;
+import com.android.api.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+public class ConnectionWarmer {
+
+    public static final long FLUSH_INTERVAL_MILLIS = 30 * 1000;
+    private static final int MAX_RECORDED_HOSTS = 20;
+
+    private static ConnectionWarmer sInstance = null;
+
+    private final ConcurrentHashMap<String, AtomicInteger> mHostCounts = new ConcurrentHashMap<>();
+    private final AtomicBoolean mWritePending = new AtomicBoolean();
+    private final AtomicBoolean mDirty = new AtomicBoolean();
+    private volatile long mLastFlushTime;
+    private volatile File mHistoryFile;
+    private volatile List<String> mPreviousHosts = Collections.emptyList();
+    private boolean mLoaded;
+    private int mPendingPreconnectHosts;
+
+    public static ConnectionWarmer getInstance() {
+        if (sInstance == null) {
+            synchronized (ConnectionWarmer.class) {
+                if (sInstance == null) {
+                    sInstance = new ConnectionWarmer();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public void initialize(final File historyFile) {
+        synchronized (this) {
+            if (mHistoryFile != null) {
+                return;
+            }
+            mHistoryFile = historyFile;
+        }
+        // initialize runs on the main thread, the history is read where the other disk work is
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                onHistoryLoaded(readHistory(historyFile));
+            }
+        });
+    }
+
+    private void onHistoryLoaded(List<String> previousHosts) {
+        final int pendingHosts;
+        synchronized (this) {
+            mPreviousHosts = previousHosts;
+            mLoaded = true;
+            pendingHosts = mPendingPreconnectHosts;
+            mPendingPreconnectHosts = 0;
+        }
+        if (pendingHosts > 0) {
+            preconnectPreviousHosts(pendingHosts);
+        }
+    }
+
+    public void preconnect(String url, int connections) {
+        // each HEAD holds a connection while it is in flight, so concurrent ones open separate sockets
+        for (int i = 0; i < connections; i++) {
+            new APIRequest.HeadRequestBuilder(url)
+                    .setPriority(Priority.LOW)
+                    .setTag(APIConstants.PRECONNECT)
+                    .build()
+                    .prefetch();
+        }
+    }
+
+    public void preconnectPreviousHosts(int maxHosts) {
+        synchronized (this) {
+            if (mHistoryFile != null && !mLoaded) {
+                // picked up once the history has been read
+                mPendingPreconnectHosts = Math.max(mPendingPreconnectHosts, maxHosts);
+                return;
+            }
+        }
+        List<String> previousHosts = mPreviousHosts;
+        for (int i = 0; i < Math.min(maxHosts, previousHosts.size()); i++) {
+            preconnect(previousHosts.get(i), 1);
+        }
+    }
+
+    public List<String> getPreviousHosts() {
+        return mPreviousHosts;
+    }
+
+    synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    void recordHost(APIRequest request) {
+        if (mHistoryFile == null || APIConstants.PRECONNECT.equals(request.getTag())) {
+            return;
+        }
+        HttpUrl url = HttpUrl.parse(request.getUrl());
+        if (url == null) {
+            return;
+        }
+        String origin = url.scheme() + "://" + url.host() + ":" + url.port() + "/";
+        AtomicInteger count = mHostCounts.get(origin);
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = mHostCounts.putIfAbsent(origin, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+        mDirty.set(true);
+        // the counts only order the hosts, so the file is rewritten at most once per interval
+        final long now = System.currentTimeMillis();
+        if (now - mLastFlushTime >= FLUSH_INTERVAL_MILLIS && mWritePending.compareAndSet(false, true)) {
+            mLastFlushTime = now;
+            Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+                @Override
+                public void run() {
+                    mWritePending.set(false);
+                    writeHistory();
+                }
+            });
+        }
+    }
+
+    public void flush() {
+        if (mHistoryFile != null) {
+            writeHistory();
+        }
+    }
+
+    private static List<String> readHistory(File historyFile) {
+        List<String> hosts = new ArrayList<>();
+        if (!historyFile.exists()) {
+            return hosts;
+        }
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(historyFile));
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.length() > 0) {
+                    hosts.add(line);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (source != null) source.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return hosts;
+    }
+
+    private synchronized void writeHistory() {
+        // the previous history must not be replaced before it has been read
+        if (!mLoaded || !mDirty.getAndSet(false)) {
+            return;
+        }
+        List<Map.Entry<String, AtomicInteger>> entries = new ArrayList<>(mHostCounts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicInteger>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicInteger> first,
+                               Map.Entry<String, AtomicInteger> second) {
+                return second.getValue().get() - first.getValue().get();
+            }
+        });
+        File tempFile = Utils.getTempFile(mHistoryFile);
+        BufferedSink sink = null;
+        try {
+            sink = Okio.buffer(Okio.sink(tempFile));
+            for (int i = 0; i < Math.min(MAX_RECORDED_HOSTS, entries.size()); i++) {
+                sink.writeUtf8(entries.get(i).getKey()).writeUtf8("\n");
+            }
+            sink.close();
+            sink = null;
+            Utils.moveFile(tempFile, mHistoryFile);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (sink != null) sink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
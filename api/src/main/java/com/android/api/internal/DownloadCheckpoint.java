@@ -0,0 +1,187 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import okhttp3.Response;
+
+public final class DownloadCheckpoint {
+
+    private static final String SUFFIX = ".checkpoint";
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_OFFSET = "offset";
+
+    private final String mUrl;
+    private final String mETag;
+    private final String mLastModified;
+    private final long mOffset;
+
+    public DownloadCheckpoint(String url, String eTag, String lastModified, long offset) {
+        this.mUrl = url;
+        this.mETag = eTag;
+        this.mLastModified = lastModified;
+        this.mOffset = offset;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public long getOffset() {
+        return mOffset;
+    }
+
+    public DownloadCheckpoint withOffset(long offset) {
+        return new DownloadCheckpoint(mUrl, mETag, mLastModified, offset);
+    }
+
+    public String getValidator() {
+        // weak entity tags are not allowed in If-Range
+        if (mETag != null && !mETag.startsWith("W/")) {
+            return mETag;
+        }
+        return mLastModified;
+    }
+
+    // the stored offset is only where the transfer began, the partial file's length is how far it got
+    public boolean canResume(String url, File file) {
+        return mUrl.equals(url) && getValidator() != null && file.length() > 0;
+    }
+
+    public static String getValidator(Response response) {
+        return new DownloadCheckpoint(null, response.header("ETag"),
+                response.header("Last-Modified"), 0).getValidator();
+    }
+
+    public static DownloadCheckpoint fromResponse(String url, Response response, long offset) {
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url, response.header("ETag"),
+                response.header("Last-Modified"), offset);
+        return checkpoint.getValidator() != null ? checkpoint : null;
+    }
+
+    public static long getContentRangeStart(Response response) {
+        String contentRange = response.header("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int end = contentRange.indexOf('-');
+        if (end == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(6, end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static long getContentRangeTotal(Response response) {
+        String contentRange = response.header("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int slash = contentRange.indexOf('/');
+        if (slash == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static DownloadCheckpoint read(File file) {
+        File checkpointFile = getCheckpointFile(file);
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(checkpointFile);
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            String url = properties.getProperty(KEY_URL);
+            if (url == null) {
+                return null;
+            }
+            return new DownloadCheckpoint(url, properties.getProperty(KEY_ETAG),
+                    properties.getProperty(KEY_LAST_MODIFIED),
+                    Long.parseLong(properties.getProperty(KEY_OFFSET, "0")));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            try {
+                if (inputStream != null) inputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void write(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_URL, mUrl);
+        if (mETag != null) {
+            properties.setProperty(KEY_ETAG, mETag);
+        }
+        if (mLastModified != null) {
+            properties.setProperty(KEY_LAST_MODIFIED, mLastModified);
+        }
+        properties.setProperty(KEY_OFFSET, String.valueOf(mOffset));
+        File checkpointFile = getCheckpointFile(file);
+        File tempFile = new File(checkpointFile.getPath() + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            properties.store(outputStream, null);
+        } finally {
+            try {
+                if (outputStream != null) outputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!tempFile.renameTo(checkpointFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to write checkpoint " + checkpointFile);
+        }
+    }
+
+    public static void delete(File file) {
+        File checkpointFile = getCheckpointFile(file);
+        if (checkpointFile.exists()) {
+            checkpointFile.delete();
+        }
+    }
+
+    private static File getCheckpointFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.error.DigestMismatchException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okio.Buffer;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.Sink;
+
+public final class DownloadDigest {
+
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    private final String mAlgorithm;
+    private final String mExpectedDigest;
+    private final MessageDigest mMessageDigest;
+    private final OutputStream mDigestStream;
+    private String mDigest;
+
+    public DownloadDigest(String algorithm, String expectedDigest) throws IOException {
+        this.mAlgorithm = algorithm != null ? algorithm : DEFAULT_ALGORITHM;
+        this.mExpectedDigest = expectedDigest;
+        try {
+            this.mMessageDigest = MessageDigest.getInstance(mAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        this.mDigestStream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                mMessageDigest.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                mMessageDigest.update(b, off, len);
+            }
+        };
+    }
+
+    public String getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    public String getDigest() {
+        return mDigest;
+    }
+
+    public Sink sink(Sink sink) {
+        return new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                // hashes the okio segments in place before they are handed to the file
+                source.copyTo(mDigestStream, 0, byteCount);
+                super.write(source, byteCount);
+            }
+        };
+    }
+
+    public void update(File file, long byteCount) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8 * 1024];
+            long remaining = byteCount;
+            int len;
+            while (remaining > 0
+                    && (len = is.read(buf, 0, (int) Math.min(buf.length, remaining))) != -1) {
+                mMessageDigest.update(buf, 0, len);
+                remaining -= len;
+            }
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void verify() throws DigestMismatchException {
+        mDigest = ByteString.of(mMessageDigest.digest()).hex();
+        if (mExpectedDigest != null && !mExpectedDigest.equalsIgnoreCase(mDigest)) {
+            throw new DigestMismatchException(mAlgorithm, mExpectedDigest, mDigest);
+        }
+    }
+
+}
@@ -0,0 +1,666 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.api.common.APIRequest;
+import com.android.api.common.APIResponse;
+import com.android.api.common.ConnectionClassManager;
+import com.android.api.common.ConnectionQuality;
+import com.android.api.common.Priority;
+import com.android.api.common.RequestType;
+import com.android.api.core.Core;
+import com.android.api.error.APIError;
+import com.android.api.interfaces.DownloadListener;
+import com.android.api.interfaces.DownloadProgressListener;
+import com.android.api.utils.Utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+public class DownloadManager {
+
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 2;
+    public static final long CONCURRENCY_CHECK_INTERVAL_MILLIS = 1000;
+
+    private static DownloadManager sInstance = null;
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>();
+    private final Object mJournalLock = new Object();
+    // only these headers go into the journal, credentials stay in memory and are supplied again by
+    // enqueueing the same download after a restart
+    private final Set<String> mPersistedHeaders = new HashSet<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mConcurrencyCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkConcurrency();
+        }
+    };
+    private File mJournalFile;
+    private boolean mJournalWritePending;
+    private int mMaxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+    // includes stopped downloads whose worker has not returned yet
+    private int mRunningDownloads;
+    private boolean mConcurrencyCheckPosted;
+    private Listener mListener;
+
+    public DownloadManager() {
+        persistHeader("Accept");
+        persistHeader("Accept-Language");
+        persistHeader("Referer");
+        persistHeader("User-Agent");
+    }
+
+    public interface Listener {
+
+        void onDownloadComplete(String dirPath, String fileName);
+
+        void onError(String dirPath, String fileName, APIError apiError);
+    }
+
+    public static DownloadManager getInstance() {
+        if (sInstance == null) {
+            synchronized (DownloadManager.class) {
+                if (sInstance == null) {
+                    sInstance = new DownloadManager();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public void initialize(File journalFile) {
+        synchronized (this) {
+            mJournalFile = journalFile;
+            readJournal();
+        }
+        schedule();
+    }
+
+    public void setListener(Listener listener) {
+        synchronized (this) {
+            mListener = listener;
+        }
+    }
+
+    public void persistHeader(String name) {
+        synchronized (this) {
+            mPersistedHeaders.add(name.toLowerCase(Locale.US));
+        }
+    }
+
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        synchronized (this) {
+            mMaxConcurrentDownloads = Math.max(1, maxConcurrentDownloads);
+        }
+        checkConcurrency();
+    }
+
+    public void enqueue(APIRequest request, DownloadListener downloadListener) {
+        enqueue(request, null, downloadListener);
+    }
+
+    public void enqueue(APIRequest request, DownloadProgressListener downloadProgressListener,
+                        DownloadListener downloadListener) {
+        if (request.getRequestType() != RequestType.DOWNLOAD) {
+            throw new IllegalArgumentException("Only download requests can be enqueued");
+        }
+        if (request.getOkHttpClient() != null || request.getExecutor() != null
+                || request.getDigestListener() != null || request.hasDownloadProgressListener()) {
+            // none of these survive a restart, the listeners are passed to enqueue instead
+            throw new IllegalArgumentException("A custom client, executor or listener on the request "
+                    + "cannot be restored from the download journal");
+        }
+        synchronized (this) {
+            Entry entry = Entry.from(request);
+            Entry existing = mEntries.get(entry.mId);
+            if (existing != null) {
+                existing.update(entry);
+                entry = existing;
+            } else {
+                mEntries.put(entry.mId, entry);
+            }
+            writeJournal();
+            entry.mDownloadListener = downloadListener;
+            entry.mDownloadProgressListener = downloadProgressListener;
+        }
+        schedule();
+    }
+
+    public void pause(Object tag) {
+        if (tag == null) {
+            return;
+        }
+        final String tagName = String.valueOf(tag);
+        final List<APIRequest> runningRequests = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : mEntries.values()) {
+                if (tagName.equals(entry.mTag) && !entry.mPaused) {
+                    entry.mPaused = true;
+                    APIRequest request = stop(entry);
+                    if (request != null) {
+                        runningRequests.add(request);
+                    }
+                }
+            }
+            writeJournal();
+        }
+        // the partial files and their checkpoints are kept, resume continues from there
+        for (APIRequest request : runningRequests) {
+            request.cancel(true);
+        }
+    }
+
+    public void resume(Object tag) {
+        if (tag == null) {
+            return;
+        }
+        final String tagName = String.valueOf(tag);
+        synchronized (this) {
+            for (Entry entry : mEntries.values()) {
+                if (tagName.equals(entry.mTag)) {
+                    entry.mPaused = false;
+                    entry.mFailed = false;
+                }
+            }
+            writeJournal();
+        }
+        schedule();
+    }
+
+    public void cancel(Object tag) {
+        if (tag == null) {
+            return;
+        }
+        final String tagName = String.valueOf(tag);
+        final List<APIRequest> runningRequests = new ArrayList<>();
+        final List<File> files = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Entry> iterator = mEntries.values().iterator(); iterator.hasNext(); ) {
+                Entry entry = iterator.next();
+                if (tagName.equals(entry.mTag)) {
+                    iterator.remove();
+                    APIRequest request = stop(entry);
+                    if (request != null) {
+                        runningRequests.add(request);
+                    }
+                    files.add(new File(entry.mDirPath, entry.mFileName));
+                }
+            }
+            writeJournal();
+        }
+        for (APIRequest request : runningRequests) {
+            request.cancel(true);
+        }
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (File file : files) {
+                    deletePartialFiles(file);
+                }
+            }
+        });
+    }
+
+    private static void deletePartialFiles(File file) {
+        // a checkpoint means the target itself is the partial file of a resumable download
+        if (DownloadCheckpoint.read(file) != null) {
+            file.delete();
+        }
+        DownloadCheckpoint.delete(file);
+        Utils.getTempFile(file).delete();
+    }
+
+    public synchronized int getPendingCount() {
+        return mEntries.size();
+    }
+
+    private void schedule() {
+        while (true) {
+            final Entry entry;
+            final APIRequest request;
+            synchronized (this) {
+                if (mRunningDownloads >= getAllowedConcurrentDownloads()) {
+                    return;
+                }
+                entry = nextEntry();
+                if (entry == null) {
+                    return;
+                }
+                request = entry.newRequest();
+                if (entry.mDownloadProgressListener != null) {
+                    request.setDownloadProgressListener(entry.mDownloadProgressListener);
+                }
+                entry.mRequest = request;
+                mRunningDownloads++;
+                postConcurrencyCheck();
+            }
+            request.setSequenceNumber(APIRequestQueue.getInstance().getSequenceNumber());
+            APIRequestQueue.getInstance().addRequest(request,
+                    Core.getInstance().getExecutorSupplier().forDownloadTasks(),
+                    new InternalRunnable(request) {
+                        @Override
+                        public void run() {
+                            synchronized (DownloadManager.this) {
+                                if (entry.mRequest != request) {
+                                    // stopped before it got a thread
+                                    return;
+                                }
+                                entry.mStarted = true;
+                            }
+                            request.setRunning(true);
+                            APIResponse response = request.executeForDownload();
+                            request.setRunning(false);
+                            request.finish();
+                            onFinished(entry, request, response.isSuccess() ? null : response.getError());
+                        }
+                    });
+        }
+    }
+
+    void checkConcurrency() {
+        final List<APIRequest> stoppedRequests = new ArrayList<>();
+        synchronized (this) {
+            mConcurrencyCheckPosted = false;
+            final List<Entry> activeEntries = new ArrayList<>();
+            for (Entry entry : mEntries.values()) {
+                if (entry.mRequest != null && !entry.mStopping) {
+                    activeEntries.add(entry);
+                }
+            }
+            // the most recently queued downloads step aside, they resume from their partial files
+            int surplus = activeEntries.size() - getAllowedConcurrentDownloads();
+            for (int i = activeEntries.size() - 1; i >= 0 && surplus > 0; i--, surplus--) {
+                APIRequest request = stop(activeEntries.get(i));
+                if (request != null) {
+                    stoppedRequests.add(request);
+                }
+            }
+            postConcurrencyCheck();
+        }
+        for (APIRequest request : stoppedRequests) {
+            request.cancel(true);
+        }
+        schedule();
+    }
+
+    private void postConcurrencyCheck() {
+        // the cap depends on the link and the foreground queue, so it is looked at again while
+        // downloads run and not only when one is started
+        if (!mConcurrencyCheckPosted && mRunningDownloads > 0) {
+            mConcurrencyCheckPosted = true;
+            mHandler.postDelayed(mConcurrencyCheck, CONCURRENCY_CHECK_INTERVAL_MILLIS);
+        }
+    }
+
+    private APIRequest stop(Entry entry) {
+        final APIRequest request = entry.mRequest;
+        if (request == null || entry.mStopping) {
+            return null;
+        }
+        if (entry.mStarted) {
+            // the slot is held until the worker returns, so a resume never races the old writer
+            entry.mStopping = true;
+        } else {
+            release(entry);
+            request.finish();
+        }
+        return request;
+    }
+
+    private void release(Entry entry) {
+        entry.mRequest = null;
+        entry.mStarted = false;
+        entry.mStopping = false;
+        mRunningDownloads--;
+    }
+
+    private int getAllowedConcurrentDownloads() {
+        // big downloads step aside while the link is poor or foreground requests are queued
+        if (ConnectionClassManager.getInstance().getCurrentConnectionQuality() == ConnectionQuality.POOR
+                || Core.getInstance().getExecutorSupplier().forNetworkTasks().hasPendingTasks()) {
+            return 1;
+        }
+        return mMaxConcurrentDownloads;
+    }
+
+    private Entry nextEntry() {
+        for (Entry entry : mEntries.values()) {
+            if (entry.mRequest == null && !entry.mPaused && !entry.mFailed && !entry.mHeadersWithheld) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void onFinished(final Entry entry, APIRequest request, final APIError apiError) {
+        final DownloadListener downloadListener;
+        final Listener listener;
+        synchronized (this) {
+            if (entry.mRequest != request) {
+                return;
+            }
+            final boolean stopped = entry.mStopping;
+            release(entry);
+            // a download that completed while being stopped is still done
+            if (apiError != null && (entry.mPaused || stopped)) {
+                downloadListener = null;
+                listener = null;
+            } else {
+                if (apiError == null) {
+                    mEntries.remove(entry.mId);
+                } else {
+                    // the partial file and its checkpoint are kept for resume or cancel
+                    entry.mFailed = true;
+                }
+                writeJournal();
+                downloadListener = entry.mDownloadListener;
+                listener = mListener;
+            }
+        }
+        if (downloadListener != null || listener != null) {
+            Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (apiError == null) {
+                        if (downloadListener != null) {
+                            downloadListener.onDownloadComplete();
+                        }
+                        if (listener != null) {
+                            listener.onDownloadComplete(entry.mDirPath, entry.mFileName);
+                        }
+                    } else {
+                        if (downloadListener != null) {
+                            downloadListener.onError(apiError);
+                        }
+                        if (listener != null) {
+                            listener.onError(entry.mDirPath, entry.mFileName, apiError);
+                        }
+                    }
+                }
+            });
+        }
+        schedule();
+    }
+
+    private void readJournal() {
+        if (mJournalFile == null || !mJournalFile.exists()) {
+            return;
+        }
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(mJournalFile));
+            JSONArray jsonArray = new JSONArray(source.readUtf8());
+            for (int i = 0; i < jsonArray.length(); i++) {
+                Entry entry = Entry.fromJSON(jsonArray.getJSONObject(i));
+                if (!mEntries.containsKey(entry.mId)) {
+                    mEntries.put(entry.mId, entry);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (source != null) source.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void writeJournal() {
+        if (mJournalFile == null || mJournalWritePending) {
+            return;
+        }
+        // the fsync stays off the caller's thread, changes made meanwhile go out in the same write
+        mJournalWritePending = true;
+        Core.getInstance().getExecutorSupplier().forDiskTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                flushJournal();
+            }
+        });
+    }
+
+    private void flushJournal() {
+        synchronized (mJournalLock) {
+            final File journalFile;
+            final JSONArray jsonArray = new JSONArray();
+            synchronized (this) {
+                mJournalWritePending = false;
+                journalFile = mJournalFile;
+                try {
+                    for (Entry entry : mEntries.values()) {
+                        jsonArray.put(entry.toJSON(mPersistedHeaders));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+            File tempFile = Utils.getTempFile(journalFile);
+            BufferedSink sink = null;
+            try {
+                FileOutputStream fos = new FileOutputStream(tempFile);
+                sink = Okio.buffer(Okio.sink(fos));
+                sink.writeUtf8(jsonArray.toString());
+                sink.flush();
+                fos.getFD().sync();
+                sink.close();
+                sink = null;
+                Utils.moveFile(tempFile, journalFile);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    if (sink != null) sink.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String mId;
+        private final String mUrl;
+        private final String mDirPath;
+        private final String mFileName;
+        private final String mTag;
+        private final Priority mPriority;
+        private final String mDigestAlgorithm;
+        private final String mExpectedDigest;
+        private LinkedHashMap<String, List<String>> mHeaders;
+        private String mUserAgent;
+        private long mMaxBytesPerSecond;
+        private String mCacheControl;
+        private boolean mPaused;
+        private boolean mFailed;
+        // headers left out of the journal have to be supplied by enqueueing it again
+        private boolean mHeadersWithheld;
+        private boolean mStarted;
+        private boolean mStopping;
+        private DownloadListener mDownloadListener;
+        private DownloadProgressListener mDownloadProgressListener;
+        private APIRequest mRequest;
+
+        private Entry(String url, String dirPath, String fileName, String tag, Priority priority,
+                      LinkedHashMap<String, List<String>> headers, String digestAlgorithm,
+                      String expectedDigest, String userAgent, long maxBytesPerSecond,
+                      String cacheControl) {
+            this.mId = new File(dirPath, fileName).getPath();
+            this.mUrl = url;
+            this.mDirPath = dirPath;
+            this.mFileName = fileName;
+            this.mTag = tag;
+            this.mPriority = priority;
+            this.mHeaders = headers;
+            this.mDigestAlgorithm = digestAlgorithm;
+            this.mExpectedDigest = expectedDigest;
+            this.mUserAgent = userAgent;
+            this.mMaxBytesPerSecond = maxBytesPerSecond;
+            this.mCacheControl = cacheControl;
+        }
+
+        void update(Entry entry) {
+            mHeaders = entry.mHeaders;
+            mUserAgent = entry.mUserAgent;
+            mMaxBytesPerSecond = entry.mMaxBytesPerSecond;
+            mCacheControl = entry.mCacheControl;
+            mFailed = false;
+            mHeadersWithheld = false;
+        }
+
+        static Entry from(APIRequest request) {
+            CacheControl cacheControl = request.getCacheControl();
+            LinkedHashMap<String, List<String>> headers = new LinkedHashMap<>();
+            Headers requestHeaders = request.getHeaders();
+            for (int i = 0; i < requestHeaders.size(); i++) {
+                List<String> values = headers.get(requestHeaders.name(i));
+                if (values == null) {
+                    values = new ArrayList<>();
+                    headers.put(requestHeaders.name(i), values);
+                }
+                values.add(requestHeaders.value(i));
+            }
+            return new Entry(request.getUrl(), request.getDirPath(), request.getFileName(),
+                    request.getTag() != null ? String.valueOf(request.getTag()) : null,
+                    request.getPriority(), headers, request.getDigestAlgorithm(),
+                    request.getExpectedDigest(), request.getUserAgent(), request.getMaxBytesPerSecond(),
+                    cacheControl != null ? cacheControl.toString() : null);
+        }
+
+        static Entry fromJSON(JSONObject jsonObject) throws Exception {
+            LinkedHashMap<String, List<String>> headers = new LinkedHashMap<>();
+            JSONObject jsonHeaders = jsonObject.optJSONObject("headers");
+            if (jsonHeaders != null) {
+                for (Iterator<?> names = jsonHeaders.keys(); names.hasNext(); ) {
+                    String name = (String) names.next();
+                    JSONArray jsonValues = jsonHeaders.getJSONArray(name);
+                    List<String> values = new ArrayList<>();
+                    for (int i = 0; i < jsonValues.length(); i++) {
+                        values.add(jsonValues.getString(i));
+                    }
+                    headers.put(name, values);
+                }
+            }
+            Entry entry = new Entry(jsonObject.getString("url"),
+                    jsonObject.getString("dirPath"),
+                    jsonObject.getString("fileName"),
+                    jsonObject.has("tag") ? jsonObject.getString("tag") : null,
+                    Priority.valueOf(jsonObject.optString("priority", Priority.MEDIUM.name())),
+                    headers,
+                    jsonObject.has("digestAlgorithm") ? jsonObject.getString("digestAlgorithm") : null,
+                    jsonObject.has("expectedDigest") ? jsonObject.getString("expectedDigest") : null,
+                    jsonObject.has("userAgent") ? jsonObject.getString("userAgent") : null,
+                    jsonObject.optLong("maxBytesPerSecond"),
+                    jsonObject.has("cacheControl") ? jsonObject.getString("cacheControl") : null);
+            entry.mPaused = jsonObject.optBoolean("paused");
+            entry.mFailed = jsonObject.optBoolean("failed");
+            entry.mHeadersWithheld = jsonObject.optBoolean("headersWithheld");
+            return entry;
+        }
+
+        JSONObject toJSON(Set<String> persistedHeaders) throws Exception {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("url", mUrl);
+            jsonObject.put("dirPath", mDirPath);
+            jsonObject.put("fileName", mFileName);
+            if (mTag != null) {
+                jsonObject.put("tag", mTag);
+            }
+            jsonObject.put("priority", mPriority.name());
+            JSONObject jsonHeaders = new JSONObject();
+            boolean headersWithheld = mHeadersWithheld;
+            for (String name : mHeaders.keySet()) {
+                if (persistedHeaders.contains(name.toLowerCase(Locale.US))) {
+                    jsonHeaders.put(name, new JSONArray(mHeaders.get(name)));
+                } else {
+                    headersWithheld = true;
+                }
+            }
+            jsonObject.put("headers", jsonHeaders);
+            if (mUserAgent != null) {
+                jsonObject.put("userAgent", mUserAgent);
+            }
+            if (mMaxBytesPerSecond > 0) {
+                jsonObject.put("maxBytesPerSecond", mMaxBytesPerSecond);
+            }
+            if (mCacheControl != null) {
+                jsonObject.put("cacheControl", mCacheControl);
+            }
+            if (mDigestAlgorithm != null) {
+                jsonObject.put("digestAlgorithm", mDigestAlgorithm);
+            }
+            if (mExpectedDigest != null) {
+                jsonObject.put("expectedDigest", mExpectedDigest);
+            }
+            jsonObject.put("paused", mPaused);
+            jsonObject.put("failed", mFailed);
+            jsonObject.put("headersWithheld", headersWithheld);
+            return jsonObject;
+        }
+
+        APIRequest newRequest() {
+            APIRequest.DownloadBuilder builder = new APIRequest.DownloadBuilder(mUrl, mDirPath, mFileName)
+                    .setPriority(mPriority)
+                    .setTag(mTag)
+                    .setResumable(true);
+            for (String name : mHeaders.keySet()) {
+                for (String value : mHeaders.get(name)) {
+                    builder.addHeaders(name, value);
+                }
+            }
+            if (mCacheControl != null) {
+                builder.addHeaders("Cache-Control", mCacheControl);
+            }
+            if (mUserAgent != null) {
+                builder.setUserAgent(mUserAgent);
+            }
+            if (mMaxBytesPerSecond > 0) {
+                builder.setMaxBytesPerSecond(mMaxBytesPerSecond);
+            }
+            if (mExpectedDigest != null) {
+                builder.setExpectedDigest(mDigestAlgorithm, mExpectedDigest);
+            }
+            return builder.build();
+        }
+    }
+
+}
@@ -39,7 +39,7 @@ public class DownloadProgressHandler extends Handler {
         switch (msg.what) {
             case APIConstants.UPDATE:
                 if (mDownloadProgressListener != null) {
-                    final Progress progress = (Progress) msg.obj;
+                    final Progress progress = ((ProgressDispatcher) msg.obj).consume();
                     mDownloadProgressListener.onProgress(progress.currentBytes, progress.totalBytes);
                 }
                 break;
@@ -0,0 +1,55 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+final class DownloadProgressInterceptor implements Interceptor {
+
+    static final DownloadProgressInterceptor INSTANCE = new DownloadProgressInterceptor();
+
+    private DownloadProgressInterceptor() {
+
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request okHttpRequest = chain.request();
+        Response response = chain.proceed(okHttpRequest);
+        if (!(okHttpRequest.tag() instanceof APIRequest) || response.body() == null) {
+            return response;
+        }
+        APIRequest request = (APIRequest) okHttpRequest.tag();
+        long offset = 0;
+        if (response.code() == 206) {
+            offset = Math.max(0, DownloadCheckpoint.getContentRangeStart(response));
+        }
+        return response.newBuilder()
+                .body(new ResponseProgressBody(response.body(),
+                        request.getDownloadProgressListener(), request.getProgressSnapshot(), offset,
+                        request.getBandwidthThrottler()))
+                .build();
+    }
+
+}
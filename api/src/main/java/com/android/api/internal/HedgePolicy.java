@@ -0,0 +1,125 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class HedgePolicy {
+
+    public static final float DEFAULT_BUDGET_RATIO = 0.05f;
+    private static final long TOKEN_SCALE = 1000;
+    // lets a short burst of hedges through after a quiet period
+    private static final long MAX_BALANCE = 10 * TOKEN_SCALE;
+    private static final int LATENCY_WINDOW = 64;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    static final int MAX_HOSTS = 64;
+
+    // least recently used hosts are dropped so apps talking to many hosts do not grow it forever
+    private static final LinkedHashMap<String, LatencyWindow> sLatencies =
+            new LinkedHashMap<String, LatencyWindow>(0, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LatencyWindow> eldest) {
+                    return size() > MAX_HOSTS;
+                }
+            };
+    private static volatile float sBudgetRatio = DEFAULT_BUDGET_RATIO;
+    private static long sBalance;
+
+    private HedgePolicy() {
+
+    }
+
+    public static void setBudgetRatio(float budgetRatio) {
+        sBudgetRatio = budgetRatio;
+    }
+
+    static synchronized void deposit() {
+        sBalance = Math.min(MAX_BALANCE, sBalance + (long) (sBudgetRatio * TOKEN_SCALE));
+    }
+
+    static synchronized boolean tryWithdraw() {
+        if (sBalance < TOKEN_SCALE) {
+            return false;
+        }
+        sBalance -= TOKEN_SCALE;
+        return true;
+    }
+
+    static void recordLatency(String host, long latencyMillis) {
+        synchronized (sLatencies) {
+            LatencyWindow window = sLatencies.get(host);
+            if (window == null) {
+                window = new LatencyWindow();
+                sLatencies.put(host, window);
+            }
+            window.add(latencyMillis);
+        }
+    }
+
+    static long getHedgeDelay(long hedgeDelayMillis, String host) {
+        if (hedgeDelayMillis != APIConstants.ADAPTIVE_HEDGE_DELAY) {
+            return hedgeDelayMillis;
+        }
+        synchronized (sLatencies) {
+            LatencyWindow window = sLatencies.get(host);
+            return window != null ? window.getP95() : -1;
+        }
+    }
+
+    static int getHostCount() {
+        synchronized (sLatencies) {
+            return sLatencies.size();
+        }
+    }
+
+    static void reset() {
+        synchronized (sLatencies) {
+            sLatencies.clear();
+        }
+        synchronized (HedgePolicy.class) {
+            sBalance = 0;
+        }
+    }
+
+    private static final class LatencyWindow {
+
+        private final long[] mSamples = new long[LATENCY_WINDOW];
+        private int mCount;
+        private int mNext;
+
+        void add(long latencyMillis) {
+            mSamples[mNext] = latencyMillis;
+            mNext = (mNext + 1) % mSamples.length;
+            mCount = Math.min(mCount + 1, mSamples.length);
+        }
+
+        long getP95() {
+            if (mCount < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(mSamples, mCount);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(mCount * 0.95) - 1];
+        }
+    }
+
+}
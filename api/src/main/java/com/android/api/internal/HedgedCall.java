@@ -0,0 +1,197 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import android.os.Process;
+
+import com.android.api.common.APIRequest;
+import com.android.api.core.PriorityThreadFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+final class HedgedCall implements Callback {
+
+    private static ScheduledExecutorService sTimer;
+
+    private final APIRequest mRequest;
+    private final OkHttpClient mOkHttpClient;
+    private final Request mOkHttpRequest;
+    private final Call mPrimary;
+    private final LinkedBlockingQueue<Object> mHedgeResults = new LinkedBlockingQueue<>();
+    // guarded by this
+    private Call mHedge;
+    private Call mWinner;
+    private boolean mDone;
+
+    private HedgedCall(APIRequest request, OkHttpClient okHttpClient, Request okHttpRequest) {
+        this.mRequest = request;
+        this.mOkHttpClient = okHttpClient;
+        this.mOkHttpRequest = okHttpRequest;
+        this.mPrimary = request.getCall();
+    }
+
+    static Response execute(APIRequest request, OkHttpClient okHttpClient,
+                            Request okHttpRequest) throws IOException {
+        HedgePolicy.deposit();
+        long hedgeDelay = HedgePolicy.getHedgeDelay(request.getHedgeDelayMillis(),
+                okHttpRequest.url().host());
+        if (hedgeDelay < 0) {
+            // no latency history for the host yet
+            return request.getCall().execute();
+        }
+        return new HedgedCall(request, okHttpClient, okHttpRequest).execute(hedgeDelay);
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (sTimer == null) {
+            sTimer = Executors.newSingleThreadScheduledExecutor(
+                    new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND));
+        }
+        return sTimer;
+    }
+
+    private Response execute(long hedgeDelay) throws IOException {
+        final ScheduledFuture<?> hedgeTimer = getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                startHedge();
+            }
+        }, hedgeDelay, TimeUnit.MILLISECONDS);
+        try {
+            Response response = null;
+            IOException failure = null;
+            try {
+                // the primary keeps the calling thread, only the hedge goes through the dispatcher
+                response = mPrimary.execute();
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                if (response != null && mWinner == null) {
+                    mWinner = mPrimary;
+                    return response;
+                }
+                if (mHedge == null) {
+                    mDone = true;
+                    throw failure;
+                }
+            }
+            if (response != null) {
+                // the hedge answered first
+                response.close();
+            }
+            // a cancelled request cancels the hedge too, so this returns once the hedge is done
+            Object result = mHedgeResults.take();
+            if (result instanceof Response) {
+                mRequest.setCall(mHedge);
+                return (Response) result;
+            }
+            throw (IOException) result;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            hedgeTimer.cancel(false);
+            synchronized (this) {
+                mDone = true;
+                if (mHedge != null) {
+                    mRequest.removeCall(mHedge);
+                    if (mWinner != mHedge) {
+                        mHedge.cancel();
+                    }
+                }
+            }
+            // a response that won while a failure was being raised is never handed out
+            Object result;
+            while ((result = mHedgeResults.poll()) != null) {
+                if (result instanceof Response) {
+                    ((Response) result).close();
+                }
+            }
+        }
+    }
+
+    private void startHedge() {
+        // a hedge that waits in the dispatcher's queue cannot answer sooner, so its budget is kept
+        if (wouldQueue()) {
+            return;
+        }
+        final Call hedge;
+        synchronized (this) {
+            if (mDone || mWinner != null || mPrimary.isCanceled() || !HedgePolicy.tryWithdraw()) {
+                return;
+            }
+            hedge = mOkHttpClient.newCall(mOkHttpRequest);
+            mHedge = hedge;
+            mRequest.addCall(hedge);
+        }
+        hedge.enqueue(this);
+    }
+
+    private boolean wouldQueue() {
+        final Dispatcher dispatcher = mOkHttpClient.dispatcher();
+        final String host = mOkHttpRequest.url().host();
+        if (dispatcher.runningCallsCount() >= dispatcher.getMaxRequests()) {
+            return true;
+        }
+        for (Call call : dispatcher.queuedCalls()) {
+            if (host.equals(call.request().url().host())) {
+                return true;
+            }
+        }
+        int runningForHost = 0;
+        for (Call call : dispatcher.runningCalls()) {
+            if (host.equals(call.request().url().host())) {
+                runningForHost++;
+            }
+        }
+        return runningForHost >= dispatcher.getMaxRequestsPerHost();
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) {
+        synchronized (this) {
+            if (mDone || mWinner != null) {
+                response.close();
+                return;
+            }
+            mWinner = call;
+        }
+        mHedgeResults.add(response);
+        // unblocks the calling thread, which hands out the hedge's response
+        mPrimary.cancel();
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        mHedgeResults.add(e);
+    }
+
+}
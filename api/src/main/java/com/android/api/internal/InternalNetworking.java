@@ -25,6 +25,7 @@ import com.android.api.common.APIConstants;
 import com.android.api.common.APIRequest;
 import com.android.api.common.ConnectionClassManager;
 import com.android.api.error.APIError;
+import com.android.api.error.DigestMismatchException;
 import com.android.api.interceptors.HttpLoggingInterceptor;
 import com.android.api.interceptors.HttpLoggingInterceptor.Level;
 import com.android.api.utils.Utils;
@@ -34,7 +35,6 @@ import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Headers;
-import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -62,7 +62,8 @@ public final class InternalNetworking {
         Request okHttpRequest;
         Response okHttpResponse;
         try {
-            Request.Builder builder = new Request.Builder().url(request.getUrl());
+            ConnectionWarmer.getInstance().recordHost(request);
+            Request.Builder builder = new Request.Builder().url(request.getUrl()).tag(request);
             addHeadersToRequestBuilder(builder, request);
             RequestBody requestBody = null;
             switch (request.getMethod()) {
@@ -104,14 +105,28 @@ public final class InternalNetworking {
             }
             okHttpRequest = builder.build();
 
-            if (request.getOkHttpClient() != null) {
-                request.setCall(request.getOkHttpClient().newBuilder().cache(sHttpClient.cache()).build().newCall(okHttpRequest));
-            } else {
-                request.setCall(sHttpClient.newCall(okHttpRequest));
-            }
+            final OkHttpClient okHttpClient = ClientRegistry.getClient(request.getOkHttpClient());
+            request.setCall(okHttpClient.newCall(okHttpRequest));
+            final boolean idempotent = request.getMethod() == GET || request.getMethod() == HEAD;
             final long startTime = System.currentTimeMillis();
             final long startBytes = TrafficStats.getTotalRxBytes();
-            okHttpResponse = request.getCall().execute();
+            if (idempotent && request.getHedgeDelayMillis() != 0) {
+                okHttpResponse = HedgedCall.execute(request, okHttpClient, okHttpRequest);
+            } else {
+                okHttpResponse = request.getCall().execute();
+            }
+            recordHeadersLatency(request, okHttpResponse, startTime);
+            if (idempotent && okHttpResponse.isSuccessful() && okHttpResponse.cacheResponse() == null) {
+                HedgePolicy.recordLatency(okHttpRequest.url().host(),
+                        System.currentTimeMillis() - startTime);
+            }
+            final BandwidthThrottler bandwidthThrottler = BandwidthThrottler.forRequest(request);
+            if (bandwidthThrottler != null && okHttpResponse.body() != null) {
+                okHttpResponse = okHttpResponse.newBuilder()
+                        .body(new ResponseProgressBody(okHttpResponse.body(), null,
+                                request.getProgressSnapshot(), 0, bandwidthThrottler))
+                        .build();
+            }
             final long timeTaken = System.currentTimeMillis() - startTime;
             if (okHttpResponse.cacheResponse() == null) {
                 final long finalBytes = TrafficStats.getTotalRxBytes();
@@ -144,101 +159,163 @@ public final class InternalNetworking {
     public static Response performDownloadRequest(final APIRequest request) throws APIError {
         Request okHttpRequest;
         Response okHttpResponse;
+        final BandwidthThrottler bandwidthThrottler = BandwidthThrottler.forRequest(request);
+        final File destinationFile = new File(request.getDirPath(), request.getFileName());
+        DownloadCheckpoint checkpoint = null;
         try {
-            Request.Builder builder = new Request.Builder().url(request.getUrl());
+            ConnectionWarmer.getInstance().recordHost(request);
+            Request.Builder builder = new Request.Builder().url(request.getUrl()).tag(request);
             addHeadersToRequestBuilder(builder, request);
             builder = builder.get();
+            if (request.isResumable()) {
+                checkpoint = DownloadCheckpoint.read(destinationFile);
+                if (checkpoint != null && checkpoint.canResume(request.getUrl(), destinationFile)) {
+                    checkpoint = checkpoint.withOffset(destinationFile.length());
+                    builder.header("Range", "bytes=" + checkpoint.getOffset() + "-");
+                    builder.header("If-Range", checkpoint.getValidator());
+                } else {
+                    checkpoint = null;
+                }
+            }
             if (request.getCacheControl() != null) {
                 builder.cacheControl(request.getCacheControl());
             }
             okHttpRequest = builder.build();
+            // picked up by the shared progress interceptor of the download client
+            request.setBandwidthThrottler(bandwidthThrottler);
 
-            OkHttpClient okHttpClient;
-
-            if (request.getOkHttpClient() != null) {
-                okHttpClient = request.getOkHttpClient().newBuilder().cache(sHttpClient.cache())
-                        .addNetworkInterceptor(new Interceptor() {
-                            @Override
-                            public Response intercept(Chain chain) throws IOException {
-                                Response originalResponse = chain.proceed(chain.request());
-                                return originalResponse.newBuilder()
-                                        .body(new ResponseProgressBody(originalResponse.body(),
-                                                request.getDownloadProgressListener()))
-                                        .build();
-                            }
-                        }).build();
-            } else {
-                okHttpClient = sHttpClient.newBuilder()
-                        .addNetworkInterceptor(new Interceptor() {
-                            @Override
-                            public Response intercept(Chain chain) throws IOException {
-                                Response originalResponse = chain.proceed(chain.request());
-                                return originalResponse.newBuilder()
-                                        .body(new ResponseProgressBody(originalResponse.body(),
-                                                request.getDownloadProgressListener()))
-                                        .build();
-                            }
-                        }).build();
-            }
-            request.setCall(okHttpClient.newCall(okHttpRequest));
             final long startTime = System.currentTimeMillis();
             final long startBytes = TrafficStats.getTotalRxBytes();
-            okHttpResponse = request.getCall().execute();
-            Utils.saveFile(okHttpResponse, request.getDirPath(), request.getFileName());
+            final DownloadDigest digest = request.isDigestRequired()
+                    ? new DownloadDigest(request.getDigestAlgorithm(), request.getExpectedDigest())
+                    : null;
+            final long contentLength;
+            if (request.getParallelSegments() > 1 && !request.isResumable()) {
+                // resumable downloads stay on one connection so a partial file can be picked up
+                okHttpResponse = SegmentedDownloader.download(request,
+                        ClientRegistry.getClient(request.getOkHttpClient()), okHttpRequest,
+                        destinationFile, digest, bandwidthThrottler);
+                // the probe only carried the first byte, its range total is the file length
+                contentLength = okHttpResponse.code() == 206
+                        ? DownloadCheckpoint.getContentRangeTotal(okHttpResponse)
+                        : okHttpResponse.body().contentLength();
+            } else {
+                request.setCall(ClientRegistry.getDownloadClient(request.getOkHttpClient())
+                        .newCall(okHttpRequest));
+                okHttpResponse = request.getCall().execute();
+                saveDownloadResponse(okHttpResponse, request, destinationFile, checkpoint, digest);
+                contentLength = okHttpResponse.body().contentLength();
+            }
+            if (digest != null) {
+                request.setDigest(digest.getDigest());
+            }
+            if (okHttpResponse.code() == 416 && checkpoint != null) {
+                // the partial file no longer matches the server, start over
+                okHttpResponse.close();
+                DownloadCheckpoint.delete(destinationFile);
+                destinationFile.delete();
+                return performDownloadRequest(request);
+            }
             final long timeTaken = System.currentTimeMillis() - startTime;
             if (okHttpResponse.cacheResponse() == null) {
                 final long finalBytes = TrafficStats.getTotalRxBytes();
                 final long diffBytes;
                 if (startBytes == TrafficStats.UNSUPPORTED || finalBytes == TrafficStats.UNSUPPORTED) {
-                    diffBytes = okHttpResponse.body().contentLength();
+                    diffBytes = contentLength;
                 } else {
                     diffBytes = finalBytes - startBytes;
                 }
-                ConnectionClassManager.getInstance().updateBandwidth(diffBytes, timeTaken);
+                if (bandwidthThrottler == null) {
+                    // a throttled transfer would drag the measured bandwidth down
+                    ConnectionClassManager.getInstance().updateBandwidth(diffBytes, timeTaken);
+                }
                 Utils.sendAnalytics(request.getAnalyticsListener(), timeTaken, -1,
-                        okHttpResponse.body().contentLength(), false);
+                        contentLength, false);
             } else if (request.getAnalyticsListener() != null) {
                 Utils.sendAnalytics(request.getAnalyticsListener(), timeTaken, -1, 0, true);
             }
         } catch (IOException ioe) {
-            try {
-                File destinationFile = new File(request.getDirPath() + File.separator + request.getFileName());
-                if (destinationFile.exists()) {
-                    destinationFile.delete();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+            if (ioe instanceof DigestMismatchException) {
+                throw Utils.getErrorForDigestMismatch(new APIError(ioe));
             }
             throw new APIError(ioe);
         }
         return okHttpResponse;
     }
 
+    private static void saveDownloadResponse(Response response, APIRequest request,
+                                             File destinationFile, DownloadCheckpoint checkpoint,
+                                             DownloadDigest digest) throws IOException {
+        if (!request.isResumable()) {
+            Utils.saveFile(response, request.getDirPath(), request.getFileName(),
+                    response.isSuccessful() ? digest : null);
+        } else if (response.isSuccessful()) {
+            saveResumableFile(response, request, destinationFile, checkpoint, digest);
+        }
+    }
+
+    private static void saveResumableFile(Response response, APIRequest request,
+                                          File destinationFile, DownloadCheckpoint checkpoint,
+                                          DownloadDigest digest) throws IOException {
+        long offset = 0;
+        if (response.code() == 206) {
+            if (checkpoint == null
+                    || DownloadCheckpoint.getContentRangeStart(response) != checkpoint.getOffset()) {
+                DownloadCheckpoint.delete(destinationFile);
+                throw new IOException("Unexpected Content-Range " + response.header("Content-Range"));
+            }
+            offset = checkpoint.getOffset();
+        }
+        DownloadCheckpoint newCheckpoint = DownloadCheckpoint.fromResponse(request.getUrl(),
+                response, offset);
+        if (newCheckpoint == null && offset > 0) {
+            newCheckpoint = checkpoint;
+        }
+        if (newCheckpoint == null) {
+            // nothing to resume against, go through a temp file like any other download
+            DownloadCheckpoint.delete(destinationFile);
+            Utils.saveFile(response, request.getDirPath(), request.getFileName(), digest);
+            return;
+        }
+        newCheckpoint.write(destinationFile);
+        try {
+            Utils.saveFile(response, request.getDirPath(), request.getFileName(), offset, digest);
+        } catch (DigestMismatchException e) {
+            DownloadCheckpoint.delete(destinationFile);
+            destinationFile.delete();
+            throw e;
+        }
+        DownloadCheckpoint.delete(destinationFile);
+    }
 
     public static Response performUploadRequest(APIRequest request) throws APIError {
         Request okHttpRequest;
         Response okHttpResponse;
         try {
-            Request.Builder builder = new Request.Builder().url(request.getUrl());
+            ConnectionWarmer.getInstance().recordHost(request);
+            Request.Builder builder = new Request.Builder().url(request.getUrl()).tag(request);
             addHeadersToRequestBuilder(builder, request);
+            if (request.getUploadChunkSize() > 0) {
+                if (request.getCacheControl() != null) {
+                    builder.cacheControl(request.getCacheControl());
+                }
+                return ChunkedUploader.upload(request,
+                        ClientRegistry.getClient(request.getOkHttpClient()), builder.build());
+            }
             final RequestBody requestBody = request.getMultiPartRequestBody();
             final long requestBodyLength = requestBody.contentLength();
-            builder = builder.post(new RequestProgressBody(requestBody, request.getUploadProgressListener()));
+            builder = builder.post(new RequestProgressBody(requestBody, request.getUploadProgressListener(),
+                    request.getProgressSnapshot(), BandwidthThrottler.forRequest(request)));
             if (request.getCacheControl() != null) {
                 builder.cacheControl(request.getCacheControl());
             }
             okHttpRequest = builder.build();
-            if (request.getOkHttpClient() != null) {
-                request.setCall(request.getOkHttpClient()
-                        .newBuilder()
-                        .cache(sHttpClient.cache())
-                        .build()
-                        .newCall(okHttpRequest));
-            } else {
-                request.setCall(sHttpClient.newCall(okHttpRequest));
-            }
+            request.setCall((request.getMultiPartStreamMap().isEmpty()
+                    ? ClientRegistry.getClient(request.getOkHttpClient())
+                    : ClientRegistry.getSingleAttemptClient(request.getOkHttpClient())).newCall(okHttpRequest));
             final long startTime = System.currentTimeMillis();
             okHttpResponse = request.getCall().execute();
+            recordHeadersLatency(request, okHttpResponse, startTime);
             final long timeTaken = System.currentTimeMillis() - startTime;
             if (request.getAnalyticsListener() != null) {
                 if (okHttpResponse.cacheResponse() == null) {
@@ -259,6 +336,13 @@ public final class InternalNetworking {
         return okHttpResponse;
     }
 
+    private static void recordHeadersLatency(APIRequest request, Response response, long startTime) {
+        // the concurrency limiter samples this, so slow bodies or listeners don't read as congestion
+        if (response.networkResponse() != null) {
+            request.setHeadersLatencyMillis(response.receivedResponseAtMillis() - startTime);
+        }
+    }
+
     public static OkHttpClient getClient() {
         if (sHttpClient == null) {
             return getDefaultClient();
@@ -299,6 +383,17 @@ public final class InternalNetworking {
                 .build();
     }
 
+    public static void enableDnsCache() {
+        OkHttpClient client = getClient();
+        if (client.dns() == CachingDns.getInstance()) {
+            return;
+        }
+        sHttpClient = client.newBuilder()
+                .dns(CachingDns.getInstance())
+                .addInterceptor(CachingDns.getInstance().getInterceptor())
+                .build();
+    }
+
     public static void setUserAgent(String userAgent) {
         sUserAgent = userAgent;
     }
@@ -17,6 +17,7 @@
 
 package com.android.api.internal;
 
+import com.android.api.common.APIConstants;
 import com.android.api.common.APIRequest;
 import com.android.api.common.APIResponse;
 import com.android.api.common.Priority;
@@ -26,6 +27,8 @@ import com.android.api.error.APIError;
 import com.android.api.utils.SourceCloseUtil;
 import com.android.api.utils.Utils;
 
+import java.util.List;
+
 import okhttp3.Response;
 
 import static com.android.api.common.RequestType.DOWNLOAD;
@@ -87,7 +90,7 @@ public class InternalRunnable implements Runnable {
                 return;
             }
             response.setOkHttpResponse(okHttpResponse);
-            request.deliverResponse(response);
+            deliverResponse(request, response);
         } catch (Exception e) {
             deliverError(request, Utils.getErrorForConnection(new APIError(e)));
         } finally {
@@ -109,6 +112,12 @@ public class InternalRunnable implements Runnable {
                 return;
             }
             request.updateDownloadCompletion();
+        } catch (APIError e) {
+            if (APIConstants.DIGEST_MISMATCH_ERROR.equals(e.getErrorDetail())) {
+                deliverError(request, e);
+            } else {
+                deliverError(request, Utils.getErrorForConnection(new APIError(e)));
+            }
         } catch (Exception e) {
             deliverError(request, Utils.getErrorForConnection(new APIError(e)));
         }
@@ -152,11 +161,28 @@ public class InternalRunnable implements Runnable {
         return priority;
     }
 
+    private void deliverResponse(final APIRequest request, final APIResponse response) {
+        final List<APIRequest> coalescedRequests =
+                APIRequestQueue.getInstance().removeCoalescedRequests(request);
+        request.deliverResponse(response);
+        for (APIRequest coalescedRequest : coalescedRequests) {
+            coalescedRequest.setRunning(false);
+            coalescedRequest.deliverResponse(response);
+        }
+    }
+
     private void deliverError(final APIRequest request, final APIError apiError) {
+        final List<APIRequest> coalescedRequests =
+                APIRequestQueue.getInstance().removeCoalescedRequests(request);
         Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
             public void run() {
                 request.deliverError(apiError);
                 request.finish();
+                for (APIRequest coalescedRequest : coalescedRequests) {
+                    coalescedRequest.setRunning(false);
+                    coalescedRequest.deliverError(apiError);
+                    coalescedRequest.finish();
+                }
             }
         });
     }
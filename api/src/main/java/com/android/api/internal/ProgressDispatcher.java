@@ -0,0 +1,90 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.android.api.common.APIConstants;
+import com.android.api.model.Progress;
+import com.android.api.model.ProgressSnapshot;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ProgressDispatcher {
+
+    private static volatile long sMinIntervalMillis = APIConstants.DEFAULT_PROGRESS_MIN_INTERVAL_MILLIS;
+    private static volatile long sMinBytesDelta = 0;
+
+    private final Handler mHandler;
+    private final ProgressSnapshot mSnapshot;
+    private final AtomicBoolean mPending = new AtomicBoolean();
+    // only touched on the handler thread
+    private final Progress mProgress = new Progress(0, 0);
+    private long mLastDispatchTime;
+    private long mLastDispatchBytes;
+    private boolean mDone;
+
+    public ProgressDispatcher(Handler handler, ProgressSnapshot snapshot) {
+        this.mHandler = handler;
+        this.mSnapshot = snapshot != null ? snapshot : new ProgressSnapshot();
+    }
+
+    public static void setThreshold(long minIntervalMillis, long minBytesDelta) {
+        sMinIntervalMillis = minIntervalMillis;
+        sMinBytesDelta = minBytesDelta;
+    }
+
+    public void update(long currentBytes, long totalBytes, boolean done) {
+        synchronized (this) {
+            if (mDone) {
+                return;
+            }
+            mDone = done;
+            mSnapshot.update(currentBytes, totalBytes, done);
+            long now = SystemClock.uptimeMillis();
+            long minBytesDelta = sMinBytesDelta;
+            if (!done && now - mLastDispatchTime < sMinIntervalMillis
+                    && (minBytesDelta <= 0 || currentBytes - mLastDispatchBytes < minBytesDelta)) {
+                return;
+            }
+            mLastDispatchTime = now;
+            mLastDispatchBytes = currentBytes;
+        }
+        // a message still in the queue will pick up the latest values when it runs
+        if (mPending.compareAndSet(false, true)) {
+            post();
+        }
+    }
+
+    void post() {
+        if (mHandler != null) {
+            mHandler.sendMessage(mHandler.obtainMessage(APIConstants.UPDATE, this));
+        }
+    }
+
+    public Progress consume() {
+        mPending.set(false);
+        synchronized (mSnapshot) {
+            mProgress.currentBytes = mSnapshot.getCurrentBytes();
+            mProgress.totalBytes = mSnapshot.getTotalBytes();
+        }
+        return mProgress;
+    }
+
+}
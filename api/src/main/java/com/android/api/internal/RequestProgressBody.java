@@ -17,9 +17,8 @@
 
 package com.android.api.internal;
 
-import com.android.api.common.APIConstants;
 import com.android.api.interfaces.UploadProgressListener;
-import com.android.api.model.Progress;
+import com.android.api.model.ProgressSnapshot;
 
 import java.io.IOException;
 
@@ -32,15 +31,38 @@ import okio.Okio;
 import okio.Sink;
 
 public class RequestProgressBody extends RequestBody {
+    private static final long THROTTLE_CHUNK_SIZE = 8 * 1024;
     private final RequestBody requestBody;
     private BufferedSink bufferedSink;
-    private UploadProgressHandler uploadProgressHandler;
+    private final ProgressDispatcher progressDispatcher;
+    private final BandwidthThrottler bandwidthThrottler;
+    private long bytesWritten;
 
     public RequestProgressBody(RequestBody requestBody, UploadProgressListener uploadProgressListener) {
+        this(requestBody, uploadProgressListener, null, null);
+    }
+
+    public RequestProgressBody(RequestBody requestBody, UploadProgressListener uploadProgressListener,
+                               ProgressSnapshot progressSnapshot, BandwidthThrottler bandwidthThrottler) {
+        this(requestBody, new ProgressDispatcher(uploadProgressListener != null
+                ? new UploadProgressHandler(uploadProgressListener) : null, progressSnapshot),
+                bandwidthThrottler);
+    }
+
+    private RequestProgressBody(RequestBody requestBody, ProgressDispatcher progressDispatcher,
+                                BandwidthThrottler bandwidthThrottler) {
         this.requestBody = requestBody;
-        if (uploadProgressListener != null) {
-            this.uploadProgressHandler = new UploadProgressHandler(uploadProgressListener);
-        }
+        this.progressDispatcher = progressDispatcher;
+        this.bandwidthThrottler = bandwidthThrottler;
+    }
+
+    public RequestBody getRequestBody() {
+        return requestBody;
+    }
+
+    // keeps the listener and the throttler but counts the bytes of the given body instead
+    public RequestProgressBody withRequestBody(RequestBody body) {
+        return new RequestProgressBody(body, progressDispatcher, bandwidthThrottler);
     }
 
     public MediaType contentType() {
@@ -59,24 +81,34 @@ public class RequestProgressBody extends RequestBody {
         }
         requestBody.writeTo(bufferedSink);
         bufferedSink.flush();
+        if (contentLength() == -1) {
+            // streamed parts without a known length only know the total once written
+            progressDispatcher.update(bytesWritten, bytesWritten, true);
+        }
     }
 
     private Sink sink(Sink sink) {
         return new ForwardingSink(sink) {
-            long bytesWritten = 0L;
             long contentLength = 0L;
 
             @Override
             public void write(Buffer source, long byteCount) throws IOException {
-                super.write(source, byteCount);
+                if (bandwidthThrottler == null) {
+                    super.write(source, byteCount);
+                } else {
+                    long remaining = byteCount;
+                    while (remaining > 0) {
+                        long chunk = Math.min(remaining, THROTTLE_CHUNK_SIZE);
+                        bandwidthThrottler.acquire(chunk);
+                        super.write(source, chunk);
+                        remaining -= chunk;
+                    }
+                }
                 if (contentLength == 0) {
                     contentLength = contentLength();
                 }
                 bytesWritten += byteCount;
-                if (uploadProgressHandler != null) {
-                    uploadProgressHandler.obtainMessage(APIConstants.UPDATE,
-                            new Progress(bytesWritten, contentLength)).sendToTarget();
-                }
+                progressDispatcher.update(bytesWritten, contentLength, bytesWritten == contentLength);
             }
         };
     }
@@ -17,9 +17,8 @@
 
 package com.android.api.internal;
 
-import com.android.api.common.APIConstants;
 import com.android.api.interfaces.DownloadProgressListener;
-import com.android.api.model.Progress;
+import com.android.api.model.ProgressSnapshot;
 
 import java.io.IOException;
 
@@ -35,13 +34,22 @@ public class ResponseProgressBody extends ResponseBody {
 
     private final ResponseBody mResponseBody;
     private BufferedSource bufferedSource;
-    private DownloadProgressHandler downloadProgressHandler;
+    private final ProgressDispatcher progressDispatcher;
+    private final long mOffset;
+    private final BandwidthThrottler mBandwidthThrottler;
 
     public ResponseProgressBody(ResponseBody responseBody, DownloadProgressListener downloadProgressListener) {
+        this(responseBody, downloadProgressListener, null, 0, null);
+    }
+
+    public ResponseProgressBody(ResponseBody responseBody, DownloadProgressListener downloadProgressListener,
+                                ProgressSnapshot progressSnapshot, long offset,
+                                BandwidthThrottler bandwidthThrottler) {
         this.mResponseBody = responseBody;
-        if (downloadProgressListener != null) {
-            this.downloadProgressHandler = new DownloadProgressHandler(downloadProgressListener);
-        }
+        this.mOffset = offset;
+        this.mBandwidthThrottler = bandwidthThrottler;
+        this.progressDispatcher = new ProgressDispatcher(downloadProgressListener != null
+                ? new DownloadProgressHandler(downloadProgressListener) : null, progressSnapshot);
     }
 
     @Override
@@ -72,12 +80,13 @@ public class ResponseProgressBody extends ResponseBody {
             public long read(Buffer sink, long byteCount) throws IOException {
                 long bytesRead = super.read(sink, byteCount);
                 totalBytesRead += ((bytesRead != -1) ? bytesRead : 0);
-                if (downloadProgressHandler != null) {
-                    downloadProgressHandler
-                            .obtainMessage(APIConstants.UPDATE,
-                                    new Progress(totalBytesRead, mResponseBody.contentLength()))
-                            .sendToTarget();
+                if (mBandwidthThrottler != null && bytesRead > 0) {
+                    mBandwidthThrottler.acquire(bytesRead);
                 }
+                long contentLength = mResponseBody.contentLength();
+                progressDispatcher.update(mOffset + totalBytesRead,
+                        contentLength == -1 ? -1 : mOffset + contentLength,
+                        bytesRead == -1 || totalBytesRead == contentLength);
                 return bytesRead;
             }
         };
@@ -0,0 +1,229 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+import com.android.api.common.APIRequest;
+import com.android.api.common.ConnectionClassManager;
+import com.android.api.core.Core;
+import com.android.api.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+final class SegmentedDownloader {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private SegmentedDownloader() {
+
+    }
+
+    static Response download(final APIRequest request, final OkHttpClient okHttpClient,
+                             final Request okHttpRequest, final File destinationFile,
+                             final DownloadDigest digest,
+                             final BandwidthThrottler bandwidthThrottler) throws IOException {
+        request.setCall(okHttpClient.newCall(okHttpRequest.newBuilder()
+                .header("Range", "bytes=0-0")
+                .build()));
+        Response probeResponse = request.getCall().execute();
+        final long totalBytes = probeResponse.code() == 206
+                ? DownloadCheckpoint.getContentRangeTotal(probeResponse) : -1;
+        if (totalBytes <= 0) {
+            // the server ignored the range, the probe already carries the whole body
+            if (probeResponse.isSuccessful()) {
+                probeResponse = probeResponse.newBuilder()
+                        .body(new ResponseProgressBody(probeResponse.body(),
+                                request.getDownloadProgressListener(),
+                                request.getProgressSnapshot(), 0, bandwidthThrottler))
+                        .build();
+                Utils.saveFile(probeResponse, request.getDirPath(), request.getFileName(), digest);
+            }
+            return probeResponse;
+        }
+        final String validator = DownloadCheckpoint.getValidator(probeResponse);
+        probeResponse.close();
+
+        final int segmentCount = getSegmentCount(request.getParallelSegments(), totalBytes);
+        final long segmentSize = totalBytes / segmentCount;
+        final ProgressDispatcher progressDispatcher = new ProgressDispatcher(
+                new DownloadProgressHandler(request.getDownloadProgressListener()),
+                request.getProgressSnapshot());
+        final AtomicLong bytesDownloaded = new AtomicLong();
+        final List<Call> calls = new ArrayList<>(segmentCount);
+        final List<FutureTask<Void>> tasks = new ArrayList<>(segmentCount);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        File dir = new File(request.getDirPath());
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        final File tempFile = Utils.getTempFile(destinationFile);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        boolean completed = false;
+        try {
+            randomAccessFile.setLength(totalBytes);
+            final FileChannel channel = randomAccessFile.getChannel();
+            for (int i = 0; i < segmentCount; i++) {
+                final long start = i * segmentSize;
+                final long end = i == segmentCount - 1 ? totalBytes - 1 : start + segmentSize - 1;
+                Request.Builder builder = okHttpRequest.newBuilder()
+                        .header("Range", "bytes=" + start + "-" + end);
+                if (validator != null) {
+                    builder.header("If-Range", validator);
+                }
+                final Call call = okHttpClient.newCall(builder.build());
+                calls.add(call);
+                request.addCall(call);
+                tasks.add(new FutureTask<>(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            downloadSegment(request, call, channel, start, end, totalBytes,
+                                    bytesDownloaded, progressDispatcher, bandwidthThrottler);
+                        } catch (Exception e) {
+                            // the first failing segment stops the others rather than waiting for them
+                            if (failure.compareAndSet(null, e)) {
+                                for (Call other : calls) {
+                                    other.cancel();
+                                }
+                            }
+                            throw e;
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 1; i < tasks.size(); i++) {
+                Core.getInstance().getExecutorSupplier().forDownloadSegmentTasks()
+                        .execute(tasks.get(i));
+            }
+            tasks.get(0).run();
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // a segment cancelled by another one's failure reports that failure instead
+                    Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            randomAccessFile.close();
+            if (digest != null) {
+                // segments arrive out of order so the hash needs one sequential pass
+                digest.update(tempFile, totalBytes);
+                digest.verify();
+            }
+            Utils.moveFile(tempFile, destinationFile);
+            completed = true;
+        } finally {
+            if (!completed) {
+                for (Call call : calls) {
+                    call.cancel();
+                }
+                for (FutureTask<Void> task : tasks) {
+                    task.cancel(false);
+                }
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                tempFile.delete();
+            }
+        }
+        return probeResponse;
+    }
+
+    private static void downloadSegment(final APIRequest request, Call call, FileChannel channel,
+                                        long start, long end, final long totalBytes,
+                                        final AtomicLong bytesDownloaded,
+                                        final ProgressDispatcher progressDispatcher,
+                                        final BandwidthThrottler bandwidthThrottler)
+            throws IOException {
+        Response response = call.execute();
+        try {
+            if (response.code() != 206
+                    || DownloadCheckpoint.getContentRangeStart(response) != start) {
+                throw new IOException("Segment " + start + "-" + end
+                        + " rejected with code " + response.code());
+            }
+            Source source = new ForwardingSource(response.body().source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    if (request.isCanceled()) {
+                        throw new IOException("Canceled");
+                    }
+                    long read = super.read(sink, Math.min(byteCount, BUFFER_SIZE));
+                    if (read > 0) {
+                        if (bandwidthThrottler != null) {
+                            bandwidthThrottler.acquire(read);
+                        }
+                        long downloaded = bytesDownloaded.addAndGet(read);
+                        progressDispatcher.update(downloaded, totalBytes, downloaded == totalBytes);
+                    }
+                    return read;
+                }
+            };
+            long position = start + Utils.writeToChannel(Okio.buffer(source), channel, start, null);
+            if (position != end + 1) {
+                throw new IOException("Segment " + start + "-" + end + " ended at " + position);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private static int getSegmentCount(int maxSegments, long totalBytes) {
+        int segmentCount = maxSegments;
+        switch (ConnectionClassManager.getInstance().getCurrentConnectionQuality()) {
+            case POOR:
+                segmentCount = 1;
+                break;
+            case MODERATE:
+                segmentCount = Math.min(segmentCount, 2);
+                break;
+            default:
+                break;
+        }
+        long maxBySize = totalBytes / APIConstants.MIN_DOWNLOAD_SEGMENT_SIZE;
+        return (int) Math.max(1, Math.min(segmentCount, maxBySize));
+    }
+
+}
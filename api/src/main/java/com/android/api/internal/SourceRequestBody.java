@@ -0,0 +1,74 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Source;
+
+public class SourceRequestBody extends RequestBody {
+
+    private final String fileName;
+    private final MediaType contentType;
+    private final Source source;
+    private final long contentLength;
+    private final AtomicBoolean consumed = new AtomicBoolean();
+
+    public SourceRequestBody(String fileName, MediaType contentType, Source source, long contentLength) {
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.source = source;
+        this.contentLength = contentLength;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        // the source is read straight into the request, so it cannot be replayed on a retry
+        if (!consumed.compareAndSet(false, true)) {
+            throw new IOException("Multipart stream " + fileName
+                    + " was already consumed, streamed parts cannot be sent again on a retry");
+        }
+        try {
+            if (contentLength == -1) {
+                sink.writeAll(source);
+            } else {
+                sink.write(source, contentLength);
+            }
+        } finally {
+            source.close();
+        }
+    }
+}
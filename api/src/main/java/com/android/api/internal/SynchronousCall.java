@@ -100,6 +100,9 @@ public final class SynchronousCall {
             response.setOkHttpResponse(okHttpResponse);
             return response;
         } catch (APIError se) {
+            if (APIConstants.DIGEST_MISMATCH_ERROR.equals(se.getErrorDetail())) {
+                return new APIResponse<>(se);
+            }
             return new APIResponse<>(Utils.getErrorForConnection(new APIError(se)));
         } catch (Exception e) {
             return new APIResponse<>(Utils.getErrorForConnection(new APIError(e)));
@@ -0,0 +1,56 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+public final class TokenBucket {
+
+    private static final long MIN_BURST_BYTES = 8 * 1024;
+
+    private double mTokens;
+    private long mLastRefillTime = System.nanoTime();
+
+    public void acquire(long bytes, long bytesPerSecond) throws InterruptedIOException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            // a burst of 100 ms keeps the rate smooth without sleeping on every read
+            final double capacity = Math.max(MIN_BURST_BYTES, bytesPerSecond / 10d);
+            mTokens = Math.min(capacity,
+                    mTokens + (now - mLastRefillTime) * bytesPerSecond / 1e9);
+            mLastRefillTime = now;
+            // go into debt so concurrent callers queue up behind each other
+            mTokens -= bytes;
+            waitNanos = mTokens < 0 ? (long) (-mTokens * 1e9 / bytesPerSecond) : 0;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+}
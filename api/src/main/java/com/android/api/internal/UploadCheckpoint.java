@@ -0,0 +1,145 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Properties;
+import java.util.UUID;
+
+import okio.ByteString;
+
+public final class UploadCheckpoint {
+
+    private static final String KEY_UPLOAD_ID = "uploadId";
+    private static final String KEY_ACKNOWLEDGED = "acknowledged";
+
+    private static volatile File sDirectory;
+
+    private final File mCheckpointFile;
+    private final String mUploadId;
+    private final BitSet mAcknowledged;
+
+    private UploadCheckpoint(File checkpointFile, String uploadId, BitSet acknowledged) {
+        this.mCheckpointFile = checkpointFile;
+        this.mUploadId = uploadId;
+        this.mAcknowledged = acknowledged;
+    }
+
+    public static void setDirectory(File directory) {
+        sDirectory = directory;
+    }
+
+    static File getDirectory() {
+        File directory = sDirectory;
+        // only reached when API was not initialized with a context
+        return directory != null ? directory
+                : new File(System.getProperty("java.io.tmpdir"), APIConstants.UPLOAD_CHECKPOINT_DIR_NAME);
+    }
+
+    static UploadCheckpoint load(String url, File file, long chunkSize) {
+        // any change to the file or the chunking starts a fresh upload
+        String key = url + "|" + file.getAbsolutePath() + "|" + file.length() + "|"
+                + file.lastModified() + "|" + chunkSize;
+        File checkpointFile = new File(getDirectory(), ByteString.encodeUtf8(key).md5().hex());
+        if (checkpointFile.exists()) {
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(checkpointFile);
+                Properties properties = new Properties();
+                properties.load(inputStream);
+                String uploadId = properties.getProperty(KEY_UPLOAD_ID);
+                if (uploadId != null) {
+                    BitSet acknowledged = new BitSet();
+                    String indices = properties.getProperty(KEY_ACKNOWLEDGED, "");
+                    for (String index : indices.split(",")) {
+                        if (index.length() > 0) {
+                            acknowledged.set(Integer.parseInt(index));
+                        }
+                    }
+                    return new UploadCheckpoint(checkpointFile, uploadId, acknowledged);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    if (inputStream != null) inputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return new UploadCheckpoint(checkpointFile, UUID.randomUUID().toString(), new BitSet());
+    }
+
+    String getUploadId() {
+        return mUploadId;
+    }
+
+    synchronized boolean isAcknowledged(int chunkIndex) {
+        return mAcknowledged.get(chunkIndex);
+    }
+
+    synchronized void acknowledge(int chunkIndex) throws IOException {
+        mAcknowledged.set(chunkIndex);
+        StringBuilder indices = new StringBuilder();
+        for (int i = mAcknowledged.nextSetBit(0); i >= 0; i = mAcknowledged.nextSetBit(i + 1)) {
+            if (indices.length() > 0) {
+                indices.append(',');
+            }
+            indices.append(i);
+        }
+        Properties properties = new Properties();
+        properties.setProperty(KEY_UPLOAD_ID, mUploadId);
+        properties.setProperty(KEY_ACKNOWLEDGED, indices.toString());
+        File dir = mCheckpointFile.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File tempFile = new File(mCheckpointFile.getPath() + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            properties.store(outputStream, null);
+        } finally {
+            try {
+                if (outputStream != null) outputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!tempFile.renameTo(mCheckpointFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to write checkpoint " + mCheckpointFile);
+        }
+    }
+
+    void delete() {
+        if (mCheckpointFile.exists()) {
+            mCheckpointFile.delete();
+        }
+    }
+
+}
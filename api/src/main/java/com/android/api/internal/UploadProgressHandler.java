@@ -39,7 +39,7 @@ public class UploadProgressHandler extends Handler {
         switch (msg.what) {
             case APIConstants.UPDATE:
                 if (mUploadProgressListener != null) {
-                    final Progress progress = (Progress) msg.obj;
+                    final Progress progress = ((ProgressDispatcher) msg.obj).consume();
                     mUploadProgressListener.onProgress(progress.currentBytes, progress.totalBytes);
                 }
                 break;
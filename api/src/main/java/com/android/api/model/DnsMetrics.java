@@ -0,0 +1,74 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.model;
+
+public class DnsMetrics {
+
+    private final long mHits;
+    private final long mStaleHits;
+    private final long mMisses;
+    private final long mFailures;
+    private final long mLookups;
+    private final long mTotalLookupMillis;
+
+    public DnsMetrics(long hits, long staleHits, long misses, long failures,
+                      long lookups, long totalLookupMillis) {
+        this.mHits = hits;
+        this.mStaleHits = staleHits;
+        this.mMisses = misses;
+        this.mFailures = failures;
+        this.mLookups = lookups;
+        this.mTotalLookupMillis = totalLookupMillis;
+    }
+
+    public long getHits() {
+        return mHits;
+    }
+
+    public long getStaleHits() {
+        return mStaleHits;
+    }
+
+    public long getMisses() {
+        return mMisses;
+    }
+
+    public long getFailures() {
+        return mFailures;
+    }
+
+    public long getLookups() {
+        return mLookups;
+    }
+
+    public long getAverageLookupMillis() {
+        return mLookups == 0 ? 0 : mTotalLookupMillis / mLookups;
+    }
+
+    @Override
+    public String toString() {
+        return "DnsMetrics{" +
+                "hits=" + mHits +
+                ", staleHits=" + mStaleHits +
+                ", misses=" + mMisses +
+                ", failures=" + mFailures +
+                ", lookups=" + mLookups +
+                ", averageLookupMillis=" + getAverageLookupMillis() +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.model;
+
+public class ProgressSnapshot {
+
+    private long mCurrentBytes;
+    private long mTotalBytes = -1;
+    private boolean mDone;
+
+    public synchronized void update(long currentBytes, long totalBytes, boolean done) {
+        mCurrentBytes = currentBytes;
+        mTotalBytes = totalBytes;
+        mDone = done;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return mCurrentBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    public synchronized int getPercent() {
+        if (mTotalBytes <= 0) {
+            return mDone ? 100 : -1;
+        }
+        return (int) ((mCurrentBytes * 100) / mTotalBytes);
+    }
+
+    public synchronized Progress toProgress() {
+        return new Progress(mCurrentBytes, mTotalBytes);
+    }
+
+}
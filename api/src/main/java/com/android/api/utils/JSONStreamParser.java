@@ -0,0 +1,134 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.api.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import okio.BufferedSource;
+
+public final class JSONStreamParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private JSONStreamParser() {
+    }
+
+    public static JSONObject parseObject(BufferedSource source) throws IOException, JSONException {
+        JsonReader reader = newReader(source);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new JSONException("Expected a JSONObject but found " + reader.peek());
+        }
+        JSONObject jsonObject = readObject(reader);
+        ensureFullyConsumed(reader);
+        return jsonObject;
+    }
+
+    public static JSONArray parseArray(BufferedSource source) throws IOException, JSONException {
+        JsonReader reader = newReader(source);
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new JSONException("Expected a JSONArray but found " + reader.peek());
+        }
+        JSONArray jsonArray = readArray(reader);
+        ensureFullyConsumed(reader);
+        return jsonArray;
+    }
+
+    private static JsonReader newReader(BufferedSource source) {
+        JsonReader reader = new JsonReader(new InputStreamReader(source.inputStream(), UTF_8));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static void ensureFullyConsumed(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JSONException("Unexpected content after the end of the document");
+        }
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject jsonObject = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            jsonObject.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return jsonObject;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray jsonArray = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            jsonArray.put(readValue(reader));
+        }
+        reader.endArray();
+        return jsonArray;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return readNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected token " + reader.peek());
+        }
+    }
+
+    // mirrors the number handling of JSONTokener so results match new JSONObject(String)
+    private static Object readNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1
+                && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // greater than Long.MAX_VALUE, fall through to double
+            }
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            return literal;
+        }
+    }
+
+}
@@ -25,17 +25,24 @@ import com.google.gson.Gson;
 
 public class ParseUtil {
 
-    private static Parser.Factory mParserFactory;
+    private static volatile Parser.Factory mParserFactory;
 
     public static void setParserFactory(Parser.Factory parserFactory) {
         mParserFactory = parserFactory;
     }
 
     public static Parser.Factory getParserFactory() {
-        if (mParserFactory == null) {
-            mParserFactory = new GsonParserFactory(new Gson());
+        Parser.Factory parserFactory = mParserFactory;
+        if (parserFactory == null) {
+            synchronized (ParseUtil.class) {
+                parserFactory = mParserFactory;
+                if (parserFactory == null) {
+                    parserFactory = new GsonParserFactory(new Gson());
+                    mParserFactory = parserFactory;
+                }
+            }
         }
-        return mParserFactory;
+        return parserFactory;
     }
 
     public static void shutDown() {
@@ -22,26 +22,61 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.widget.ImageView;
 
+import com.android.api.cache.BitmapPool;
 import com.android.api.common.APIConstants;
 import com.android.api.common.APIRequest;
 import com.android.api.common.APIResponse;
 import com.android.api.core.Core;
+import com.android.api.core.DecodeExecutor;
 import com.android.api.error.APIError;
 import com.android.api.interfaces.AnalyticsListener;
+import com.android.api.internal.DownloadDigest;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.FileNameMap;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Cache;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
 import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
 
 public class Utils {
 
+    private static final int DECODE_TEMP_STORAGE_SIZE = 16 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int BODY_BUFFER_INITIAL_SIZE = 64 * 1024;
+    static final int BODY_BUFFER_MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final int MAX_BODY_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<byte[]> sDecodeTempStorage = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DECODE_TEMP_STORAGE_SIZE];
+        }
+    };
+
+    private static final ThreadLocal<BodyBuffer> sBodyBuffer = new ThreadLocal<BodyBuffer>() {
+        @Override
+        protected BodyBuffer initialValue() {
+            return new BodyBuffer();
+        }
+    };
+
     public static File getDiskCacheDir(Context context, String uniqueName) {
         return new File(context.getCacheDir(), uniqueName);
     }
@@ -70,41 +105,140 @@ public class Utils {
                                                    int maxHeight, Bitmap.Config decodeConfig,
                                                    BitmapFactory.Options decodeOptions,
                                                    ImageView.ScaleType scaleType) {
-        byte[] data = new byte[0];
+        return decodeBitmap(response, maxWidth, maxHeight, decodeConfig,
+                decodeOptions, scaleType, null);
+    }
+
+    public static APIResponse<Bitmap> decodeBitmap(Response response, int maxWidth,
+                                                   int maxHeight, Bitmap.Config decodeConfig,
+                                                   final BitmapFactory.Options decodeOptions,
+                                                   ImageView.ScaleType scaleType,
+                                                   final BitmapPool bitmapPool) {
+        // the body is read here on the network thread, which then waits for the decode, so a slow
+        // connection never holds a decode thread and the buffer can be reused for the next image
+        final BodyBuffer body = sBodyBuffer.get();
         try {
-            data = Okio.buffer(response.body().source()).readByteArray();
+            body.readFrom(response.body().source(), response.body().contentLength());
         } catch (IOException e) {
-            e.printStackTrace();
+            body.trim();
+            return APIResponse.failed(Utils.getErrorForParse(new APIError(response, e)));
         }
-        Bitmap bitmap = null;
+        final byte[] data = body.data;
+        final int length = body.length;
+        decodeOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, decodeOptions);
+        final int actualWidth = decodeOptions.outWidth;
+        final int actualHeight = decodeOptions.outHeight;
+        decodeOptions.inJustDecodeBounds = false;
+
+        final int desiredWidth;
+        final int desiredHeight;
         if (maxWidth == 0 && maxHeight == 0) {
             decodeOptions.inPreferredConfig = decodeConfig;
-            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            desiredWidth = actualWidth;
+            desiredHeight = actualHeight;
         } else {
-            decodeOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
-            int actualWidth = decodeOptions.outWidth;
-            int actualHeight = decodeOptions.outHeight;
-
-            int desiredWidth = getResizedDimension(maxWidth, maxHeight,
+            desiredWidth = getResizedDimension(maxWidth, maxHeight,
                     actualWidth, actualHeight, scaleType);
-            int desiredHeight = getResizedDimension(maxHeight, maxWidth,
+            desiredHeight = getResizedDimension(maxHeight, maxWidth,
                     actualHeight, actualWidth, scaleType);
-
-            decodeOptions.inJustDecodeBounds = false;
             decodeOptions.inSampleSize =
                     findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-            Bitmap tempBitmap =
-                    BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
-
-            if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth ||
-                    tempBitmap.getHeight() > desiredHeight)) {
-                bitmap = Bitmap.createScaledBitmap(tempBitmap,
-                        desiredWidth, desiredHeight, true);
-                tempBitmap.recycle();
-            } else {
-                bitmap = tempBitmap;
+        }
+
+        final int sampleSize = Math.max(1, decodeOptions.inSampleSize);
+        final int bytesPerPixel = getBytesPerPixel(decodeOptions.inPreferredConfig);
+        long decodedBytes = (long) ((actualWidth + sampleSize - 1) / sampleSize)
+                * ((actualHeight + sampleSize - 1) / sampleSize) * bytesPerPixel;
+        if (maxWidth != 0 || maxHeight != 0) {
+            decodedBytes += (long) desiredWidth * desiredHeight * bytesPerPixel;
+        }
+
+        Bitmap bitmap = null;
+        if (actualWidth > 0 && actualHeight > 0) {
+            final DecodeExecutor decodeExecutor = Core.getInstance().getExecutorSupplier()
+                    .forDecodeTasks();
+            final AtomicBoolean claimed = new AtomicBoolean();
+            final CountDownLatch finished = new CountDownLatch(1);
+            try {
+                decodeExecutor.acquire(decodedBytes);
+                try {
+                    final Future<Bitmap> future = decodeExecutor.submit(new Callable<Bitmap>() {
+                        @Override
+                        public Bitmap call() {
+                            if (!claimed.compareAndSet(false, true)) {
+                                // the caller stopped waiting before the decode started
+                                return null;
+                            }
+                            try {
+                                decodeOptions.inTempStorage = sDecodeTempStorage.get();
+                                final boolean mutable = decodeOptions.inMutable;
+                                Bitmap inBitmap = null;
+                                if (bitmapPool != null) {
+                                    inBitmap = bitmapPool.get((actualWidth + sampleSize - 1) / sampleSize,
+                                            (actualHeight + sampleSize - 1) / sampleSize,
+                                            decodeOptions.inPreferredConfig);
+                                }
+                                if (inBitmap != null) {
+                                    decodeOptions.inMutable = true;
+                                    decodeOptions.inBitmap = inBitmap;
+                                }
+                                Bitmap tempBitmap;
+                                try {
+                                    tempBitmap = BitmapFactory.decodeByteArray(data, 0, length, decodeOptions);
+                                } catch (IllegalArgumentException e) {
+                                    // the pooled bitmap could not be reused for this image
+                                    if (inBitmap == null) {
+                                        throw e;
+                                    }
+                                    decodeOptions.inBitmap = null;
+                                    decodeOptions.inMutable = mutable;
+                                    bitmapPool.put(inBitmap);
+                                    tempBitmap = BitmapFactory.decodeByteArray(data, 0, length, decodeOptions);
+                                } finally {
+                                    decodeOptions.inTempStorage = null;
+                                    decodeOptions.inBitmap = null;
+                                    decodeOptions.inMutable = mutable;
+                                }
+                                if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth ||
+                                        tempBitmap.getHeight() > desiredHeight)) {
+                                    Bitmap scaledBitmap = Bitmap.createScaledBitmap(tempBitmap,
+                                            desiredWidth, desiredHeight, true);
+                                    if (bitmapPool != null) {
+                                        bitmapPool.put(tempBitmap);
+                                    } else {
+                                        tempBitmap.recycle();
+                                    }
+                                    return scaledBitmap;
+                                }
+                                return tempBitmap;
+                            } finally {
+                                finished.countDown();
+                            }
+                        }
+                    });
+                    try {
+                        bitmap = future.get();
+                    } catch (InterruptedException e) {
+                        // the budget and the buffer are only given back once the decode stopped reading them
+                        future.cancel(false);
+                        if (!claimed.compareAndSet(false, true)) {
+                            awaitUninterruptibly(finished);
+                        }
+                        throw e;
+                    }
+                } finally {
+                    decodeExecutor.release(decodedBytes);
+                    body.trim();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return APIResponse.failed(Utils.getErrorForParse(new APIError(response, e)));
+            } catch (ExecutionException e) {
+                return APIResponse.failed(Utils.getErrorForParse(new APIError(response, e.getCause())));
             }
+        } else {
+            body.trim();
         }
 
         if (bitmap == null) {
@@ -114,6 +248,67 @@ public class Utils {
         }
     }
 
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // the caller is told about the interruption once the decode is over
+            }
+        }
+    }
+
+    public static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+
+    static final class BodyBuffer {
+
+        byte[] data = new byte[BODY_BUFFER_INITIAL_SIZE];
+        int length;
+
+        void readFrom(BufferedSource source) throws IOException {
+            readFrom(source, -1);
+        }
+
+        void readFrom(BufferedSource source, long contentLength) throws IOException {
+            length = 0;
+            // a known length is allocated once instead of growing through every doubling
+            if (contentLength > data.length && contentLength <= MAX_BODY_BUFFER_SIZE) {
+                data = new byte[(int) contentLength];
+            }
+            while (true) {
+                if (length == data.length) {
+                    if (source.exhausted()) {
+                        return;
+                    }
+                    byte[] grown = new byte[data.length * 2];
+                    System.arraycopy(data, 0, grown, 0, length);
+                    data = grown;
+                }
+                final int read = source.read(data, length, data.length - length);
+                if (read == -1) {
+                    return;
+                }
+                length += read;
+            }
+        }
+
+        void trim() {
+            // an unusually large image should not pin its buffer on this thread
+            if (data.length > BODY_BUFFER_MAX_RETAINED_SIZE) {
+                data = new byte[BODY_BUFFER_INITIAL_SIZE];
+            }
+            length = 0;
+        }
+    }
+
     private static int getResizedDimension(int maxPrimary, int maxSecondary,
                                            int actualPrimary, int actualSecondary,
                                            ImageView.ScaleType scaleType) {
@@ -168,34 +363,139 @@ public class Utils {
 
     public static void saveFile(Response response, String dirPath,
                                 String fileName) throws IOException {
-        InputStream is = null;
-        byte[] buf = new byte[2048];
-        int len;
-        FileOutputStream fos = null;
+        saveFile(response, dirPath, fileName, null);
+    }
+
+    public static void saveFile(Response response, String dirPath,
+                                String fileName, DownloadDigest digest) throws IOException {
+        File file = new File(getDir(dirPath), fileName);
+        File tempFile = getTempFile(file);
         try {
-            is = response.body().byteStream();
-            File dir = new File(dirPath);
-            if (!dir.exists()) {
-                dir.mkdirs();
+            writeToFile(response.body(), tempFile, 0, true, digest);
+            if (digest != null) {
+                digest.verify();
+            }
+            moveFile(tempFile, file);
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
             }
-            File file = new File(dir, fileName);
-            fos = new FileOutputStream(file);
-            while ((len = is.read(buf)) != -1) {
-                fos.write(buf, 0, len);
+        }
+    }
+
+    public static void saveFile(Response response, String dirPath,
+                                String fileName, long offset) throws IOException {
+        saveFile(response, dirPath, fileName, offset, null);
+    }
+
+    public static void saveFile(Response response, String dirPath, String fileName,
+                                long offset, DownloadDigest digest) throws IOException {
+        File file = new File(getDir(dirPath), fileName);
+        if (digest != null && offset > 0) {
+            digest.update(file, offset);
+        }
+        // never preallocated, a resumed download continues from the length of the partial file
+        writeToFile(response.body(), file, offset, false, digest);
+        if (digest != null) {
+            digest.verify();
+        }
+    }
+
+    public static File getTempFile(File file) {
+        return new File(file.getPath() + APIConstants.TEMP_FILE_SUFFIX);
+    }
+
+    public static void moveFile(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to)) {
+                throw new IOException("Unable to rename " + from + " to " + to);
+            }
+        }
+    }
+
+    private static File getDir(String dirPath) {
+        File dir = new File(dirPath);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    private static void writeToFile(ResponseBody body, File file, long offset, boolean preallocate,
+                                    DownloadDigest digest) throws IOException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            final long contentLength = body.contentLength();
+            final boolean preallocated = preallocate && contentLength > 0;
+            randomAccessFile.setLength(preallocated ? offset + contentLength : offset);
+            final long written = writeToChannel(body.source(), randomAccessFile.getChannel(),
+                    offset, digest);
+            if (preallocated && written != contentLength) {
+                randomAccessFile.setLength(offset + written);
             }
-            fos.flush();
         } finally {
+            body.close();
             try {
-                if (is != null) is.close();
+                if (randomAccessFile != null) randomAccessFile.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            try {
-                if (fos != null) fos.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the source to the channel from the given position with positional writes, so
+     * several sources can fill different ranges of one file. Returns the number of bytes written.
+     */
+    public static long writeToChannel(BufferedSource source, FileChannel channel, long position,
+                                      DownloadDigest digest) throws IOException {
+        Sink fileSink = new FileChannelSink(channel, position);
+        BufferedSink sink = Okio.buffer(digest != null ? digest.sink(fileSink) : fileSink);
+        long written = sink.writeAll(source);
+        sink.flush();
+        return written;
+    }
+
+    private static final class FileChannelSink implements Sink {
+
+        private final FileChannel mChannel;
+        private final byte[] mScratch = new byte[BUFFER_SIZE];
+        private final ByteBuffer mByteBuffer = ByteBuffer.wrap(mScratch);
+        private long mPosition;
+
+        FileChannelSink(FileChannel channel, long position) {
+            this.mChannel = channel;
+            this.mPosition = position;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            // okio 1.x has no ByteBuffer access to its segments, so each one goes through the scratch array
+            while (byteCount > 0) {
+                int len = source.read(mScratch, 0, (int) Math.min(byteCount, mScratch.length));
+                mByteBuffer.clear();
+                mByteBuffer.limit(len);
+                while (mByteBuffer.hasRemaining()) {
+                    mPosition += mChannel.write(mByteBuffer, mPosition);
+                }
+                byteCount -= len;
             }
         }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
     }
 
     public static void sendAnalytics(final AnalyticsListener analyticsListener,
@@ -212,6 +512,12 @@ public class Utils {
         });
     }
 
+    public static APIError getErrorForDigestMismatch(APIError error) {
+        error.setErrorDetail(APIConstants.DIGEST_MISMATCH_ERROR);
+        error.setErrorCode(0);
+        return error;
+    }
+
     public static APIError getErrorForConnection(APIError error) {
         error.setErrorDetail(APIConstants.CONNECTION_ERROR);
         error.setErrorCode(0);
@@ -0,0 +1,137 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.cache;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures get throughput from 1 to 8 threads against the synchronized LinkedHashMap the cache used to be.
+ */
+public class APICacheBenchmarkTest {
+
+    private static final int KEYS = 1000;
+    private static final int GETS_PER_THREAD = 200000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    @Test
+    public void getThroughputHoldsUpAcrossThreads() throws Exception {
+        final APICache<Integer, Integer> cache = new APICache<Integer, Integer>(KEYS);
+        final SynchronizedCache baseline = new SynchronizedCache(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            cache.put(i, i);
+            baseline.put(i, i);
+        }
+        final Getter cacheGetter = new Getter() {
+            @Override
+            public Integer get(int key) {
+                return cache.get(key);
+            }
+        };
+        final Getter baselineGetter = new Getter() {
+            @Override
+            public Integer get(int key) {
+                return baseline.get(key);
+            }
+        };
+        // warm up both before measuring
+        measure(cacheGetter, 4);
+        measure(baselineGetter, 4);
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final double singleThread = measure(cacheGetter, 1);
+        for (int threads : THREAD_COUNTS) {
+            double throughput = measure(cacheGetter, threads);
+            double baselineThroughput = measure(baselineGetter, threads);
+            // reads do not serialize on a lock, so more threads never make the cache slower overall;
+            // the bounds are loose since the machine may be shared
+            assertTrue(threads + " threads: " + throughput + " gets/ms, 1 thread: " + singleThread,
+                    throughput >= singleThread * Math.min(threads, cores) / 4);
+            // with few cores the monitor is hardly contended and buffering the reads only costs,
+            // the cache has to win once several threads really run at the same time
+            if (Math.min(threads, cores) >= 4) {
+                assertTrue(threads + " threads: " + throughput + " gets/ms, synchronized: " + baselineThroughput,
+                        throughput >= baselineThroughput);
+            }
+        }
+    }
+
+    // gets per millisecond over all threads, best of three runs
+    private static double measure(final Getter getter, int threads) throws Exception {
+        double best = 0;
+        for (int run = 0; run < 3; run++) {
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                        int key = seed * 7919;
+                        for (int i = 0; i < GETS_PER_THREAD; i++) {
+                            key = (key + 31) % KEYS;
+                            getter.get(key);
+                        }
+                        done.countDown();
+                    }
+                }).start();
+            }
+            long startTime = System.nanoTime();
+            start.countDown();
+            done.await();
+            long nanos = System.nanoTime() - startTime;
+            best = Math.max(best, (double) threads * GETS_PER_THREAD * 1000000 / nanos);
+        }
+        return best;
+    }
+
+    private interface Getter {
+        Integer get(int key);
+    }
+
+    // the access ordered map every get used to lock
+    private static final class SynchronizedCache {
+
+        private final LinkedHashMap<Integer, Integer> mMap =
+                new LinkedHashMap<Integer, Integer>(0, 0.75f, true);
+        private final int mMaxSize;
+
+        SynchronizedCache(int maxSize) {
+            mMaxSize = maxSize;
+        }
+
+        synchronized Integer get(Integer key) {
+            return mMap.get(key);
+        }
+
+        synchronized void put(Integer key, Integer value) {
+            mMap.put(key, value);
+            if (mMap.size() > mMaxSize) {
+                mMap.remove(mMap.keySet().iterator().next());
+            }
+        }
+    }
+}
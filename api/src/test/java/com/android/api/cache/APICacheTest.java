@@ -0,0 +1,137 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class APICacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        APICache<String, String> cache = new APICache<String, String>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D");
+        assertNull(cache.get("b"));
+        assertEquals(Arrays.asList("c", "a", "d"), new ArrayList<String>(cache.snapshot().keySet()));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws Exception {
+        APICache<String, String> cache = new APICache<String, String>(3);
+        cache.put("a", "A");
+        cache.get("a");
+        cache.get("a");
+        cache.get("z");
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.putCount());
+    }
+
+    @Test
+    public void tracksSizeOfAndReportsRemovals() throws Exception {
+        final List<String> removed = new ArrayList<String>();
+        APICache<String, String> cache = new APICache<String, String>(10) {
+            @Override
+            protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldValue, String newValue) {
+                removed.add((evicted ? "evicted " : "removed ") + key);
+            }
+        };
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        assertEquals(8, cache.size());
+        cache.put("a", "12");
+        assertEquals(6, cache.size());
+        cache.put("c", "123456");
+        assertEquals(8, cache.size());
+        cache.remove("c");
+        assertEquals(2, cache.size());
+        cache.resize(1);
+        assertEquals(0, cache.size());
+        assertEquals(Arrays.asList("removed a", "evicted b", "removed c", "evicted a"), removed);
+    }
+
+    @Test
+    public void createsMissingValues() throws Exception {
+        APICache<Integer, String> cache = new APICache<Integer, String>(2) {
+            @Override
+            protected String create(Integer key) {
+                return key % 2 == 0 ? "even" + key : null;
+            }
+        };
+        assertEquals("even2", cache.get(2));
+        assertNull(cache.get(3));
+        assertEquals(1, cache.createCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void staysConsistentUnderConcurrentAccess() throws Exception {
+        final APICache<Integer, Integer> cache = new APICache<Integer, Integer>(64);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 20000; i++) {
+                            int key = random.nextInt(256);
+                            if (random.nextInt(4) == 0) {
+                                cache.put(key, key);
+                            } else {
+                                Integer value = cache.get(key);
+                                if (value != null && value != key) {
+                                    throw new AssertionError("wrong value for " + key);
+                                }
+                            }
+                        }
+                    } catch (Throwable throwable) {
+                        failure.set(throwable);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        assertNull(failure.get());
+        assertTrue(cache.size() <= 64);
+        assertEquals(cache.size(), cache.snapshot().size());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.common;
+
+import com.android.api.error.APIError;
+import com.android.api.interfaces.StreamListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectStreamTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    static class Item {
+        int id;
+    }
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void deliversArrayInChunksThenCompletes() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 25; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+        }
+        mServer.enqueue(new MockResponse().setBody(json.append(']').toString()));
+
+        final List<Integer> chunkSizes = new ArrayList<>();
+        final List<Integer> ids = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final APIError[] error = new APIError[1];
+        new APIRequest.GetRequestBuilder(mServer.url("/items").toString())
+                .setExecutor(DIRECT)
+                .build()
+                .getAsObjectStream(Item.class, 10, new StreamListener<Item>() {
+                    @Override
+                    public void onChunk(List<Item> chunk) {
+                        chunkSizes.add(chunk.size());
+                        for (Item item : chunk) {
+                            ids.add(item.id);
+                        }
+                        events.add("chunk");
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        events.add("complete");
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(APIError apiError) {
+                        error[0] = apiError;
+                        done.countDown();
+                    }
+                });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        assertEquals("[10, 10, 5]", chunkSizes.toString());
+        assertEquals(25, ids.size());
+        assertEquals(Integer.valueOf(24), ids.get(24));
+        assertEquals("complete", events.get(events.size() - 1));
+    }
+}
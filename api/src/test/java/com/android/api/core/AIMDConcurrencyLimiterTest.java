@@ -0,0 +1,96 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AIMDConcurrencyLimiterTest {
+
+    @Test
+    public void growsByOneWhileQueueIsBackedUp() throws Exception {
+        AIMDConcurrencyLimiter limiter = new AIMDConcurrencyLimiter(4, 1, 8);
+        for (int i = 0; i < 4; i++) {
+            limiter.onSample(50, 0, 4, 10);
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void doesNotGrowWithoutQueuedWork() throws Exception {
+        AIMDConcurrencyLimiter limiter = new AIMDConcurrencyLimiter(4, 1, 8);
+        for (int i = 0; i < 40; i++) {
+            limiter.onSample(50, 0, 4, 0);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void backsOffWhenLatencyRisesAboveBaseline() throws Exception {
+        AIMDConcurrencyLimiter limiter = new AIMDConcurrencyLimiter(8, 1, 8);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(50, 0, 8, 0);
+        }
+        assertEquals(7, limiter.onSample(1000, 0, 8, 0));
+        // the next decrease waits for a full window of samples at the new limit
+        for (int i = 0; i < 6; i++) {
+            assertEquals(7, limiter.onSample(1000, 0, 8, 0));
+        }
+        assertEquals(6, limiter.onSample(1000, 0, 8, 0));
+    }
+
+    @Test
+    public void neverLeavesBounds() throws Exception {
+        AIMDConcurrencyLimiter limiter = new AIMDConcurrencyLimiter(2, 2, 3);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(50, 0, 3, 10);
+        }
+        assertEquals(3, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(50 + 100 * i, 0, 3, 0);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void bandwidthCapsLimit() throws Exception {
+        AIMDConcurrencyLimiter limiter = new AIMDConcurrencyLimiter(8, 1, 16);
+        limiter.onSample(50, 3 * AIMDConcurrencyLimiter.MIN_BANDWIDTH_PER_REQUEST_KBPS, 8, 0);
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void ignoresMissingSamples() throws Exception {
+        AIMDConcurrencyLimiter limiter = new AIMDConcurrencyLimiter(4, 1, 8);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(4, limiter.onSample(-1, 0, 4, 10));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidBounds() throws Exception {
+        new AIMDConcurrencyLimiter(4, 0, 8);
+    }
+
+    @Test
+    public void startsWithinBounds() throws Exception {
+        assertTrue(new AIMDConcurrencyLimiter(100, 1, 8).getLimit() == 8);
+        assertTrue(new AIMDConcurrencyLimiter(0, 2, 8).getLimit() == 2);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.core;
+
+import com.android.api.common.APIRequest;
+import com.android.api.internal.InternalNetworking;
+import com.android.api.internal.InternalRunnable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs real requests against local servers on separate loopback addresses, one slow and two fast, so each
+ * is a host of its own for the executor.
+ */
+public class APIExecutorSimulationTest {
+
+    private static final long SLOW_MILLIS = 400;
+    private static final long FAST_MILLIS = 10;
+
+    private final APIExecutor mExecutor = new APIExecutor(6, Executors.defaultThreadFactory());
+    private final List<SimulatedHost> mHosts = new ArrayList<>();
+    private SimulatedHost mSlowHost;
+
+    @Before
+    public void setUp() throws Exception {
+        mSlowHost = startHost("127.0.0.1", SLOW_MILLIS);
+        startHost("127.0.0.2", FAST_MILLIS);
+        startHost("127.0.0.3", FAST_MILLIS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        for (SimulatedHost host : mHosts) {
+            host.mServer.shutdown();
+        }
+    }
+
+    @Test
+    public void cappedSlowHostLeavesThreadsToFastHosts() throws Exception {
+        mExecutor.setMaxRequestsPerHost(2);
+        run();
+
+        assertEquals(2, mSlowHost.mPeak.get());
+        // every fast request is answered while the first slow ones are still in flight
+        for (SimulatedHost host : mHosts) {
+            if (host != mSlowHost) {
+                assertTrue(host.mLastFinish.get() < mSlowHost.mFirstFinish.get());
+            }
+        }
+    }
+
+    @Test
+    public void uncappedSlowHostHoldsEveryThread() throws Exception {
+        mExecutor.setMaxRequestsPerHost(0);
+        run();
+
+        assertEquals(6, mSlowHost.mPeak.get());
+        for (SimulatedHost host : mHosts) {
+            if (host != mSlowHost) {
+                assertTrue(host.mLastFinish.get() > mSlowHost.mFirstFinish.get());
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        // the slow host's burst arrives first
+        for (int i = 0; i < 12; i++) {
+            futures.add(mExecutor.submit(new SimulatedRequest(mSlowHost, i)));
+        }
+        for (int i = 0; i < 8; i++) {
+            for (SimulatedHost host : mHosts) {
+                if (host != mSlowHost) {
+                    futures.add(mExecutor.submit(new SimulatedRequest(host, i)));
+                }
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private SimulatedHost startHost(String address, final long latencyMillis) throws Exception {
+        final SimulatedHost host = new SimulatedHost();
+        host.mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int active = host.mActive.incrementAndGet();
+                synchronized (host.mPeak) {
+                    host.mPeak.set(Math.max(host.mPeak.get(), active));
+                }
+                Thread.sleep(latencyMillis);
+                host.mActive.decrementAndGet();
+                return new MockResponse().setBody("ok");
+            }
+        });
+        host.mServer.start(InetAddress.getByName(address), 0);
+        host.mUrl = "http://" + address + ":" + host.mServer.getPort() + "/";
+        mHosts.add(host);
+        return host;
+    }
+
+    private static final class SimulatedHost {
+        private final MockWebServer mServer = new MockWebServer();
+        private final AtomicInteger mActive = new AtomicInteger();
+        private final AtomicInteger mPeak = new AtomicInteger();
+        private final AtomicLong mFirstFinish = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong mLastFinish = new AtomicLong();
+        private String mUrl;
+    }
+
+    private static final class SimulatedRequest extends InternalRunnable {
+
+        private final SimulatedHost mHost;
+
+        SimulatedRequest(SimulatedHost host, int index) {
+            super(new APIRequest.GetRequestBuilder(host.mUrl + index).build());
+            this.mHost = host;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Response response = InternalNetworking.performSimpleRequest(request);
+                response.body().string();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            long now = System.nanoTime();
+            synchronized (mHost) {
+                mHost.mFirstFinish.set(Math.min(mHost.mFirstFinish.get(), now));
+                mHost.mLastFinish.set(Math.max(mHost.mLastFinish.get(), now));
+            }
+        }
+    }
+}
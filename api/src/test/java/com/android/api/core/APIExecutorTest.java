@@ -0,0 +1,242 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.core;
+
+import com.android.api.common.APIRequest;
+import com.android.api.common.Priority;
+import com.android.api.internal.InternalRunnable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulates slow and fast hosts sharing the executor, no request goes to the network.
+ */
+public class APIExecutorTest {
+
+    private final APIExecutor mExecutor = new APIExecutor(4, Executors.defaultThreadFactory());
+    private final ConcurrentHashMap<String, AtomicInteger> mActive = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> mPeak = new ConcurrentHashMap<>();
+    private final AtomicInteger mFinishedCdnTasks = new AtomicInteger();
+    private int mSequence;
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void capsConcurrentTasksPerHost() throws Exception {
+        mExecutor.setMaxRequestsPerHost(2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(mExecutor.submit(new SimulatedTask("cdn.example.com", Priority.MEDIUM, 20)));
+        }
+        assertTrue(mExecutor.hasPendingTasks());
+
+        awaitAll(futures);
+
+        assertEquals(2, mPeak.get("cdn.example.com").get());
+        assertFalse(mExecutor.hasPendingTasks());
+    }
+
+    @Test
+    public void burstOfOneHostDoesNotDelayAnother() throws Exception {
+        mExecutor.setMaxRequestsPerHost(5);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            futures.add(mExecutor.submit(new SimulatedTask("cdn.example.com", Priority.MEDIUM, 50)));
+        }
+        final List<Integer> cdnTasksBeforeApi = new CopyOnWriteArrayList<>();
+        List<Future<?>> apiFutures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            apiFutures.add(mExecutor.submit(new SimulatedTask("api.example.com", Priority.MEDIUM, 0) {
+                @Override
+                public void run() {
+                    super.run();
+                    cdnTasksBeforeApi.add(mFinishedCdnTasks.get());
+                }
+            }));
+        }
+
+        awaitAll(apiFutures);
+
+        // without turns between hosts the api tasks would wait for all 60 cdn tasks
+        for (int finished : cdnTasksBeforeApi) {
+            assertTrue(finished < 15);
+        }
+        assertTrue(mPeak.get("cdn.example.com").get() <= 5);
+        awaitAll(futures);
+        assertEquals(60, mFinishedCdnTasks.get());
+    }
+
+    @Test
+    public void parkedTasksAreReleasedInPriorityOrder() throws Exception {
+        mExecutor.setMaxRequestsPerHost(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Priority> order = new CopyOnWriteArrayList<>();
+        Future<?> blocking = mExecutor.submit(new SimulatedTask("cdn.example.com", Priority.MEDIUM, 0) {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (final Priority priority : Arrays.asList(Priority.LOW, Priority.HIGH, Priority.MEDIUM)) {
+            futures.add(mExecutor.submit(new SimulatedTask("cdn.example.com", priority, 0) {
+                @Override
+                public void run() {
+                    order.add(priority);
+                }
+            }));
+        }
+
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        awaitAll(futures);
+
+        assertEquals(Arrays.asList(Priority.HIGH, Priority.MEDIUM, Priority.LOW), order);
+    }
+
+    @Test
+    public void raisingTheCapReleasesParkedTasks() throws Exception {
+        mExecutor.setMaxRequestsPerHost(1);
+        final CountDownLatch running = new CountDownLatch(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(mExecutor.submit(new SimulatedTask("cdn.example.com", Priority.MEDIUM, 0) {
+                @Override
+                public void run() {
+                    running.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }));
+        }
+        assertFalse(running.await(200, TimeUnit.MILLISECONDS));
+
+        mExecutor.setMaxRequestsPerHost(0);
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        awaitAll(futures);
+    }
+
+    @Test
+    public void limiterCountsParkedTasksAsQueued() throws Exception {
+        final List<Integer> queueSizes = new CopyOnWriteArrayList<>();
+        mExecutor.setConcurrencyLimiter(new ConcurrencyLimiter() {
+            @Override
+            public int getLimit() {
+                return 4;
+            }
+
+            @Override
+            public int onSample(long latencyInMillis, int bandwidth, int inFlight, int queueSize) {
+                queueSizes.add(queueSize);
+                return 4;
+            }
+        });
+        mExecutor.setMaxRequestsPerHost(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(mExecutor.submit(new SimulatedTask("cdn.example.com", Priority.MEDIUM, 50)));
+        }
+
+        awaitAll(futures);
+
+        // the threads are idle, the task behind the released one only waits for the host's slot
+        assertEquals(1, (int) queueSizes.get(0));
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private class SimulatedTask extends InternalRunnable {
+
+        private final String mHost;
+        private final long mDurationMillis;
+
+        SimulatedTask(String host, Priority priority, long durationMillis) {
+            super(newRequest(host, priority, mSequence++));
+            this.mHost = host;
+            this.mDurationMillis = durationMillis;
+        }
+
+        @Override
+        public void run() {
+            AtomicInteger active = counter(mActive, mHost);
+            AtomicInteger peak = counter(mPeak, mHost);
+            int current = active.incrementAndGet();
+            synchronized (peak) {
+                peak.set(Math.max(peak.get(), current));
+            }
+            try {
+                Thread.sleep(mDurationMillis);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            active.decrementAndGet();
+            if ("cdn.example.com".equals(mHost)) {
+                mFinishedCdnTasks.incrementAndGet();
+            }
+        }
+    }
+
+    private static AtomicInteger counter(ConcurrentHashMap<String, AtomicInteger> counters, String host) {
+        AtomicInteger counter = counters.get(host);
+        if (counter == null) {
+            counters.putIfAbsent(host, new AtomicInteger());
+            counter = counters.get(host);
+        }
+        return counter;
+    }
+
+    private static APIRequest newRequest(String host, Priority priority, int sequence) {
+        APIRequest request = new APIRequest.GetRequestBuilder("http://" + host + "/")
+                .setPriority(priority)
+                .build();
+        request.setSequenceNumber(sequence);
+        return request;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.core;
+
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+import com.android.api.interfaces.OkHttpResponseListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterHarnessTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private MockWebServer mServer;
+    private AIMDConcurrencyLimiter mLimiter;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().startsWith("/slow")) {
+                    Thread.sleep(200);
+                }
+                return new MockResponse().setBody("ok");
+            }
+        });
+        mServer.start();
+        mLimiter = new AIMDConcurrencyLimiter(4, 1, 8);
+        Core.getInstance().setConcurrencyLimiter(mLimiter);
+        Core.getInstance().setMaxRequestsPerHost(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Core.getInstance().setConcurrencyLimiter(null);
+        Core.getInstance().setMaxRequestsPerHost(APIExecutor.DEFAULT_MAX_REQUESTS_PER_HOST);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void slowListenersDoNotReadAsCongestion() throws Exception {
+        runBurst("/fast", 40, 0);
+        final int limit = mLimiter.getLimit();
+        runBurst("/fast", 40, 200);
+        assertTrue(mLimiter.getLimit() >= limit);
+    }
+
+    @Test
+    public void slowHeadersShrinkThePool() throws Exception {
+        runBurst("/fast", 40, 0);
+        final int limit = mLimiter.getLimit();
+        runBurst("/slow", 40, 0);
+        assertTrue(mLimiter.getLimit() < limit);
+    }
+
+    private void runBurst(String path, int count, final long listenerDelay) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            new APIRequest.GetRequestBuilder(mServer.url(path + "?i=" + i).toString())
+                    .setExecutor(DIRECT)
+                    .build()
+                    .getAsOkHttpResponse(new OkHttpResponseListener() {
+                        @Override
+                        public void onResponse(Response response) {
+                            try {
+                                response.body().string();
+                                Thread.sleep(listenerDelay);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void onError(APIError apiError) {
+                            latch.countDown();
+                        }
+                    });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeExecutorTest {
+
+    private final DecodeExecutor mExecutor = new DecodeExecutor(2, 100, Executors.defaultThreadFactory());
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void acquireBlocksUntilBudgetIsReleased() throws Exception {
+        mExecutor.acquire(60);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mExecutor.acquire(50);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(60, mExecutor.getInFlightBytes());
+
+        mExecutor.release(60);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(50, mExecutor.getInFlightBytes());
+    }
+
+    @Test
+    public void decodesThatFitTogetherDoNotWait() throws Exception {
+        mExecutor.acquire(40);
+        mExecutor.acquire(60);
+        assertEquals(100, mExecutor.getInFlightBytes());
+        mExecutor.release(40);
+        mExecutor.release(60);
+        assertEquals(0, mExecutor.getInFlightBytes());
+    }
+
+    @Test
+    public void oversizeDecodeRunsAloneOnceIdle() throws Exception {
+        // larger than the whole budget, it still goes through when nothing else is in flight
+        mExecutor.acquire(500);
+        assertEquals(500, mExecutor.getInFlightBytes());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mExecutor.acquire(1);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        mExecutor.release(500);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void oversizeDecodeWaitsForOthersToFinish() throws Exception {
+        mExecutor.acquire(10);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mExecutor.acquire(500);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        mExecutor.release(10);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void raisingTheBudgetWakesWaiters() throws Exception {
+        mExecutor.acquire(80);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mExecutor.acquire(80);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        mExecutor.setMaxInFlightBytes(200);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void decodesRunOnAtMostThreadCountThreads() throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int current = active.incrementAndGet();
+                    synchronized (peak) {
+                        peak.set(Math.max(peak.get(), current));
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    active.decrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, peak.get());
+    }
+}
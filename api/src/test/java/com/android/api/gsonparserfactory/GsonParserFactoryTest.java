@@ -0,0 +1,66 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.gsonparserfactory;
+
+import com.android.api.interfaces.Parser;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class GsonParserFactoryTest {
+
+    static class User {
+        String name;
+        int age;
+    }
+
+    @Test
+    public void cachesParsersPerType() throws Exception {
+        GsonParserFactory factory = new GsonParserFactory();
+        assertSame(factory.responseBodyParser(User.class), factory.responseBodyParser(User.class));
+        assertSame(factory.requestBodyParser(User.class), factory.requestBodyParser(User.class));
+    }
+
+    @Test
+    public void parsesResponseBody() throws Exception {
+        Parser<ResponseBody, ?> parser = new GsonParserFactory().responseBodyParser(User.class);
+        User user = (User) parser.convert(ResponseBody.create(MediaType.parse("application/json"),
+                "{\"name\":\"ada\",\"age\":36}"));
+        assertEquals("ada", user.name);
+        assertEquals(36, user.age);
+    }
+
+    @Test
+    public void parsesListResponseBody() throws Exception {
+        Parser<ResponseBody, ?> parser = new GsonParserFactory().responseBodyParser(
+                new TypeToken<List<User>>() {
+                }.getType());
+        @SuppressWarnings("unchecked")
+        List<User> users = (List<User>) parser.convert(ResponseBody.create(
+                MediaType.parse("application/json"), "[{\"name\":\"a\"},{\"name\":\"b\"}]"));
+        assertEquals(2, users.size());
+        assertEquals("b", users.get(1).name);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.gsonparserfactory;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GsonResponseBodyStreamParserTest {
+
+    static class Item {
+        int id;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void iteratesArrayElements() throws Exception {
+        Iterator<Item> iterator = (Iterator<Item>) new GsonParserFactory()
+                .responseBodyStreamParser(Item.class)
+                .convert(body("[{\"id\":1},{\"id\":2},{\"id\":3}]"));
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(iterator.hasNext());
+            assertEquals(i, iterator.next().id);
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void readsElementsBeforeTheRestOfTheBody() throws Exception {
+        Iterator<Item> iterator = (Iterator<Item>) new GsonParserFactory()
+                .responseBodyStreamParser(Item.class)
+                .convert(body("[{\"id\":1},{\"id\":2},{\"id\":"));
+        assertEquals(1, iterator.next().id);
+        assertEquals(2, iterator.next().id);
+        try {
+            iterator.next();
+            fail();
+        } catch (JsonIOException | JsonSyntaxException expected) {
+        }
+    }
+
+    private static ResponseBody body(String json) {
+        return ResponseBody.create(MediaType.parse("application/json"), json);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.interceptors;
+
+import com.android.api.internal.RequestProgressBody;
+import com.android.api.model.ProgressSnapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GzipRequestInterceptorTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final long LARGE_SIZE = 16 * 1024 * 1024;
+
+    private MockWebServer mServer;
+    // the number of source bytes produced when the first compressed byte reached the socket
+    private final AtomicLong mProducedAtFirstSend = new AtomicLong(-1);
+    private final AtomicLong mProduced = new AtomicLong();
+    private volatile long mFirstSendNanos;
+    private volatile RequestBody mSentBody;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void skipsSmallAndUnlistedBodies() throws Exception {
+        OkHttpClient client = newClient();
+        post(client, RequestBody.create(JSON, new byte[100]));
+        post(client, RequestBody.create(MediaType.parse("image/png"), new byte[4096]));
+
+        assertNull(mServer.takeRequest().getHeader("Content-Encoding"));
+        assertNull(mServer.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void progressCountsCompressedBytes() throws Exception {
+        ProgressSnapshot snapshot = new ProgressSnapshot();
+        byte[] content = new byte[64 * 1024];
+        post(newClient(), new RequestProgressBody(RequestBody.create(JSON, content), null,
+                snapshot, null));
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertTrue(mSentBody instanceof RequestProgressBody);
+        assertEquals(request.getBodySize(), snapshot.getCurrentBytes());
+        assertEquals(request.getBodySize(), snapshot.getTotalBytes());
+        assertTrue(request.getBodySize() < content.length);
+        assertEquals(content.length, Okio.buffer(new GzipSource(request.getBody())).readByteArray().length);
+    }
+
+    @Test
+    public void streamsLargeBodyWithBoundedHeap() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        OkHttpClient client = newClient();
+        post(client, new GeneratedBody(64 * 1024));
+        mServer.takeRequest();
+        mProducedAtFirstSend.set(-1);
+
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        post(client, new GeneratedBody(LARGE_SIZE));
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        final long totalNanos = System.nanoTime() - start;
+        final long firstByteNanos = mFirstSendNanos - start;
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals(LARGE_SIZE, Okio.buffer(new GzipSource(request.getBody())).readByteString().size());
+        // compressed bytes go out while the source is still being produced
+        assertTrue("first send after " + mProducedAtFirstSend.get() + " bytes",
+                mProducedAtFirstSend.get() < 1024 * 1024);
+        // so the first byte is not held back until the whole body has been compressed
+        assertTrue("first byte after " + firstByteNanos / 1000000L + " ms of " + totalNanos / 1000000L + " ms",
+                firstByteNanos < totalNanos / 2);
+        // neither the source nor the compressed body is held in memory
+        assertTrue("allocated " + allocated, allocated < LARGE_SIZE / 4);
+    }
+
+    private OkHttpClient newClient() {
+        return new OkHttpClient.Builder()
+                .addInterceptor(new GzipRequestInterceptor())
+                .addNetworkInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        final RequestBody body = chain.request().body();
+                        mSentBody = body;
+                        return chain.proceed(chain.request().newBuilder()
+                                .method(chain.request().method(), new RequestBody() {
+                                    @Override
+                                    public MediaType contentType() {
+                                        return body.contentType();
+                                    }
+
+                                    @Override
+                                    public long contentLength() throws IOException {
+                                        return body.contentLength();
+                                    }
+
+                                    @Override
+                                    public void writeTo(BufferedSink sink) throws IOException {
+                                        final boolean[] closed = new boolean[1];
+                                        BufferedSink firstSendSink = Okio.buffer(new ForwardingSink(sink) {
+                                            @Override
+                                            public void close() throws IOException {
+                                                closed[0] = true;
+                                                super.close();
+                                            }
+
+                                            @Override
+                                            public void write(Buffer source, long byteCount)
+                                                    throws IOException {
+                                                if (mProducedAtFirstSend.compareAndSet(-1, mProduced.get())) {
+                                                    mFirstSendNanos = System.nanoTime();
+                                                }
+                                                super.write(source, byteCount);
+                                            }
+                                        });
+                                        body.writeTo(firstSendSink);
+                                        // the gzip body closes the sink itself
+                                        if (!closed[0]) {
+                                            firstSendSink.emit();
+                                        }
+                                    }
+                                })
+                                .build());
+                    }
+                })
+                .build();
+    }
+
+    private void post(OkHttpClient client, RequestBody body) throws Exception {
+        mServer.enqueue(new MockResponse());
+        client.newCall(new Request.Builder().url(mServer.url("/")).post(body).build())
+                .execute().close();
+    }
+
+    // hex text written from one reused array, so the source itself allocates nothing
+    private final class GeneratedBody extends RequestBody {
+
+        private final long mSize;
+
+        GeneratedBody(long size) {
+            this.mSize = size;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+
+        @Override
+        public long contentLength() {
+            return mSize;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            mProduced.set(0);
+            byte[] chunk = new byte[8 * 1024];
+            int seed = 1;
+            for (long written = 0; written < mSize; written += chunk.length) {
+                for (int i = 0; i < chunk.length; i++) {
+                    seed = seed * 1103515245 + 12345;
+                    chunk[i] = (byte) "0123456789abcdef".charAt((seed >>> 16) & 15);
+                }
+                sink.write(chunk, 0, (int) Math.min(chunk.length, mSize - written));
+                mProduced.addAndGet(chunk.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares tag queries through the tag index with the scan over every request the queue used to do.
+ */
+public class APIRequestQueueBenchmarkTest {
+
+    private static final int OUTSTANDING_REQUESTS = 10000;
+    private static final int TAGGED_REQUESTS = 10;
+    private static final int QUERIES = 2000;
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final List<APIRequest> mRequests = new ArrayList<>();
+    private APIRequestQueue mQueue;
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // keeps the executor threads busy so every other request stays queued
+                mRelease.await(30, TimeUnit.SECONDS);
+                return new MockResponse();
+            }
+        });
+        mServer.start();
+        mQueue = new APIRequestQueue();
+        for (int i = 0; i < OUTSTANDING_REQUESTS; i++) {
+            mRequests.add(mQueue.addRequest(newRequest("/bulk" + i, "bulk")));
+        }
+        for (int i = 0; i < TAGGED_REQUESTS; i++) {
+            mRequests.add(mQueue.addRequest(newRequest("/screen" + i, "screen")));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mQueue.cancelAll(true);
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void tagQueryCostFollowsMatchingRequests() {
+        long indexNanos = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        boolean running = false;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                running |= mQueue.isRequestRunning("screen");
+            }
+            indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                running |= isRunningByScan("screen");
+            }
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+        }
+        assertFalse(running);
+        // the scan walks 10k requests per query, the index only the 10 tagged ones
+        assertTrue("index " + indexNanos + "ns, scan " + scanNanos + "ns", indexNanos * 20 < scanNanos);
+    }
+
+    @Test
+    public void tagCancelLeavesOtherRequestsQueued() {
+        mQueue.cancelRequestWithGivenTag("screen", true);
+
+        for (APIRequest request : mRequests) {
+            assertTrue(request.isCanceled() == "screen".equals(request.getTag()));
+        }
+    }
+
+    // what isRequestRunning did before the index, every request checked against the tag
+    private boolean isRunningByScan(Object tag) {
+        for (APIRequest request : mRequests) {
+            if (request.getTag() != null && request.getTag().equals(tag) && request.isRunning()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private APIRequest newRequest(String path, Object tag) {
+        return new APIRequest.GetRequestBuilder(mServer.url(path).toString())
+                .setTag(tag)
+                .build();
+    }
+}
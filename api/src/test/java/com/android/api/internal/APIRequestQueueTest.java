@@ -0,0 +1,147 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+import com.android.api.interfaces.StringRequestListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class APIRequestQueueTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                mRelease.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setBody("ok");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void cancelsOnlyRequestsWithGivenTag() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(4);
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger responses = new AtomicInteger();
+        StringRequestListener listener = new StringRequestListener() {
+            @Override
+            public void onResponse(String response) {
+                responses.incrementAndGet();
+                finished.countDown();
+            }
+
+            @Override
+            public void onError(APIError anError) {
+                errors.incrementAndGet();
+                finished.countDown();
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            newRequest("/a" + i, "cancelled").getAsString(listener);
+            newRequest("/b" + i, "kept").getAsString(listener);
+        }
+        for (int i = 0; i < 4; i++) {
+            mServer.takeRequest(5, TimeUnit.SECONDS);
+        }
+        final APIRequestQueue queue = APIRequestQueue.getInstance();
+        assertTrue(queue.isRequestRunning("cancelled"));
+        assertTrue(queue.isRequestRunning("kept"));
+
+        queue.cancelRequestWithGivenTag("cancelled", true);
+        assertFalse(queue.isRequestRunning("cancelled"));
+        assertTrue(queue.isRequestRunning("kept"));
+
+        mRelease.countDown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(2, errors.get());
+        assertEquals(2, responses.get());
+        assertFalse(awaitRunning(queue, "kept"));
+    }
+
+    @Test
+    public void tagIsReusableAfterRequestsFinish() throws Exception {
+        mRelease.countDown();
+        final CountDownLatch finished = new CountDownLatch(2);
+        StringRequestListener listener = new StringRequestListener() {
+            @Override
+            public void onResponse(String response) {
+                finished.countDown();
+            }
+
+            @Override
+            public void onError(APIError anError) {
+                finished.countDown();
+            }
+        };
+        newRequest("/first", "reused").getAsString(listener);
+        newRequest("/second", "reused").getAsString(listener);
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertFalse(awaitRunning(APIRequestQueue.getInstance(), "reused"));
+    }
+
+    // listeners are called just before the request leaves the queue
+    private static boolean awaitRunning(APIRequestQueue queue, Object tag) throws Exception {
+        for (int i = 0; i < 100 && queue.isRequestRunning(tag); i++) {
+            Thread.sleep(10);
+        }
+        return queue.isRequestRunning(tag);
+    }
+
+    private APIRequest newRequest(String path, Object tag) {
+        return new APIRequest.GetRequestBuilder(mServer.url(path).toString())
+                .setTag(tag)
+                .setExecutor(DIRECT)
+                .build();
+    }
+}
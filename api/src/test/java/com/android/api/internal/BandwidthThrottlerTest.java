@@ -0,0 +1,53 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.ConnectionClassManager;
+import com.android.api.common.Priority;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BandwidthThrottlerTest {
+
+    @After
+    public void tearDown() {
+        BandwidthThrottler.setMaxBytesPerSecond(Priority.LOW, 0);
+        BandwidthThrottler.setBandwidthFraction(Priority.LOW, 0);
+    }
+
+    @Test
+    public void priorityLimitFollowsSetter() {
+        assertEquals(0, BandwidthThrottler.getPriorityMaxBytesPerSecond(Priority.LOW.ordinal()));
+        BandwidthThrottler.setMaxBytesPerSecond(Priority.LOW, 1000);
+        assertEquals(1000, BandwidthThrottler.getPriorityMaxBytesPerSecond(Priority.LOW.ordinal()));
+        assertEquals(0, BandwidthThrottler.getPriorityMaxBytesPerSecond(Priority.HIGH.ordinal()));
+    }
+
+    @Test
+    public void fractionFollowsCurrentBandwidth() {
+        BandwidthThrottler.setMaxBytesPerSecond(Priority.LOW, 2000);
+        BandwidthThrottler.setBandwidthFraction(Priority.LOW, 0.5f);
+        // other tests may already have sampled a bandwidth
+        final int bandwidthKbps = ConnectionClassManager.getInstance().getCurrentBandwidth();
+        final long expected = bandwidthKbps > 0
+                ? Math.min(2000, Math.max(1, (long) (bandwidthKbps * 1000 / 8 * 0.5f))) : 2000;
+        assertEquals(expected, BandwidthThrottler.getPriorityMaxBytesPerSecond(Priority.LOW.ordinal()));
+    }
+}
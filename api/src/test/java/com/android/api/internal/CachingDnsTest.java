@@ -0,0 +1,253 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingDnsTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Test
+    public void answersFromCacheWithinTtl() throws Exception {
+        FakeDns resolver = new FakeDns("10.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+
+        assertEquals(resolver.mAddresses, dns.lookup("example.com"));
+        assertEquals(resolver.mAddresses, dns.lookup("example.com"));
+
+        assertEquals(1, resolver.mLookups.get());
+        assertEquals(1, dns.getMetrics().getHits());
+        assertEquals(1, dns.getMetrics().getMisses());
+    }
+
+    @Test
+    public void servesStaleAnswerWhileRefreshing() throws Exception {
+        FakeDns resolver = new FakeDns("10.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        dns.setTtl(50, 60 * 1000);
+        List<InetAddress> first = dns.lookup("example.com");
+        resolver.setAddress("10.0.0.2");
+        Thread.sleep(100);
+
+        assertEquals(first, dns.lookup("example.com"));
+        assertEquals(resolver.mAddresses, dns.lookup("example.com"));
+        assertEquals(2, resolver.mLookups.get());
+    }
+
+    @Test
+    public void resolvesAgainOnceStaleWindowIsOver() throws Exception {
+        FakeDns resolver = new FakeDns("10.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        dns.setTtl(50, 0);
+        dns.lookup("example.com");
+        resolver.setAddress("10.0.0.2");
+        Thread.sleep(100);
+
+        assertEquals(resolver.mAddresses, dns.lookup("example.com"));
+    }
+
+    @Test
+    public void lookupOnReplacedResolverIsNotCached() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        FakeDns oldResolver = new FakeDns("10.0.0.1") {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                return super.lookup(hostname);
+            }
+        };
+        final CachingDns dns = new CachingDns(oldResolver, DIRECT);
+        final AtomicReference<List<InetAddress>> oldAnswer = new AtomicReference<>();
+        Thread lookup = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    oldAnswer.set(dns.lookup("example.com"));
+                } catch (UnknownHostException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        lookup.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        FakeDns newResolver = new FakeDns("10.0.0.2");
+        dns.setDelegate(newResolver);
+        release.countDown();
+        lookup.join(5000);
+
+        assertEquals(oldResolver.mAddresses, oldAnswer.get());
+        assertEquals(newResolver.mAddresses, dns.lookup("example.com"));
+        assertEquals(1, newResolver.mLookups.get());
+    }
+
+    @Test
+    public void connectFailureInvalidatesHost() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        int closedPort = serverSocket.getLocalPort();
+        serverSocket.close();
+        FakeDns resolver = new FakeDns("127.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dns(dns)
+                .addInterceptor(dns.getInterceptor())
+                .retryOnConnectionFailure(false)
+                .build();
+
+        try {
+            client.newCall(new Request.Builder()
+                    .url("http://example.com:" + closedPort + "/")
+                    .build()).execute();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(1, resolver.mLookups.get());
+
+        dns.lookup("example.com");
+        assertEquals(2, resolver.mLookups.get());
+    }
+
+    @Test
+    public void timeoutInvalidatesHost() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.start();
+        FakeDns resolver = new FakeDns("127.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dns(dns)
+                .addInterceptor(dns.getInterceptor())
+                .readTimeout(100, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build();
+
+        try {
+            client.newCall(new Request.Builder()
+                    .url("http://example.com:" + server.getPort() + "/")
+                    .build()).execute();
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            server.shutdown();
+        }
+        assertEquals(0, dns.getEntryCount());
+    }
+
+    @Test
+    public void expiredEntryIsDroppedWhenLookupFails() throws Exception {
+        FakeDns resolver = new FakeDns("10.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        dns.setTtl(20, 0);
+        dns.lookup("example.com");
+        resolver.setAddress(null);
+        Thread.sleep(50);
+
+        try {
+            dns.lookup("example.com");
+            fail();
+        } catch (UnknownHostException expected) {
+        }
+        assertEquals(0, dns.getEntryCount());
+    }
+
+    @Test
+    public void entriesAreCapped() throws Exception {
+        FakeDns resolver = new FakeDns("10.0.0.1");
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        for (int i = 0; i < CachingDns.MAX_ENTRIES * 2; i++) {
+            dns.lookup("host" + i + ".example.com");
+        }
+        assertEquals(CachingDns.MAX_ENTRIES, dns.getEntryCount());
+        // the most recent answers are the ones kept
+        dns.lookup("host" + (CachingDns.MAX_ENTRIES * 2 - 1) + ".example.com");
+        assertEquals(CachingDns.MAX_ENTRIES * 2, resolver.mLookups.get());
+    }
+
+    @Test
+    public void failedLookupIsNotCached() throws Exception {
+        FakeDns resolver = new FakeDns(null);
+        CachingDns dns = new CachingDns(resolver, DIRECT);
+        for (int i = 0; i < 2; i++) {
+            try {
+                dns.lookup("example.com");
+                fail();
+            } catch (UnknownHostException expected) {
+            }
+        }
+        assertEquals(2, resolver.mLookups.get());
+        assertEquals(2, dns.getMetrics().getFailures());
+    }
+
+    private static class FakeDns implements Dns {
+
+        final AtomicInteger mLookups = new AtomicInteger();
+        volatile List<InetAddress> mAddresses;
+
+        FakeDns(String address) throws UnknownHostException {
+            setAddress(address);
+        }
+
+        void setAddress(String address) throws UnknownHostException {
+            mAddresses = address != null
+                    ? Collections.singletonList(InetAddress.getByName(address)) : null;
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            mLookups.incrementAndGet();
+            if (mAddresses == null) {
+                throw new UnknownHostException(hostname);
+            }
+            return mAddresses;
+        }
+    }
+}
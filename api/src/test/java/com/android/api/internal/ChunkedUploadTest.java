@@ -0,0 +1,197 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the chunk protocol against a reference server that reassembles the file.
+ */
+public class ChunkedUploadTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final byte[] mContent = new byte[300 * 1024];
+    private final byte[] mReceived = new byte[mContent.length];
+    private final List<Integer> mChunkIndices = new CopyOnWriteArrayList<>();
+    private final Set<String> mUploadIds = new HashSet<>();
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private MockWebServer mServer;
+    private volatile int mRejectChunk = -1;
+    private volatile boolean mHoldChunks;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(5).nextBytes(mContent);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int chunkIndex = Integer.parseInt(
+                        request.getHeader(ChunkedUploader.HEADER_UPLOAD_CHUNK_INDEX));
+                int chunkCount = Integer.parseInt(
+                        request.getHeader(ChunkedUploader.HEADER_UPLOAD_CHUNK_COUNT));
+                mChunkIndices.add(chunkIndex);
+                synchronized (mUploadIds) {
+                    mUploadIds.add(request.getHeader(ChunkedUploader.HEADER_UPLOAD_ID));
+                }
+                if (mHoldChunks) {
+                    mRelease.await(10, TimeUnit.SECONDS);
+                }
+                if (chunkIndex == mRejectChunk) {
+                    mRejectChunk = -1;
+                    return new MockResponse().setResponseCode(500);
+                }
+                ByteString body = request.getBody().readByteString();
+                String contentType = request.getHeader("Content-Type");
+                String boundary = contentType.substring(contentType.indexOf("boundary=") + 9);
+                if (!"v".equals(formPart(body, boundary, "k").utf8())) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                ByteString chunk = formPart(body, boundary, "file");
+                int offset = Integer.parseInt(request.getHeader(ChunkedUploader.HEADER_UPLOAD_OFFSET));
+                synchronized (mReceived) {
+                    System.arraycopy(chunk.toByteArray(), 0, mReceived, offset, chunk.size());
+                }
+                return new MockResponse().setBody(chunkIndex == chunkCount - 1 ? "done" : "ack");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void reassemblesParallelChunks() throws Exception {
+        File file = newFile();
+
+        Response response = InternalNetworking.performUploadRequest(newRequest(file, 3));
+
+        assertEquals("done", response.body().string());
+        assertArrayEquals(mContent, mReceived);
+        assertEquals(5, mChunkIndices.size());
+        // the last chunk closes the upload, so it goes out after the others
+        assertEquals(4, (int) mChunkIndices.get(4));
+        assertEquals(1, mUploadIds.size());
+    }
+
+    @Test
+    public void resumesAfterRejectedChunk() throws Exception {
+        File file = newFile();
+        mRejectChunk = 2;
+
+        Response rejected = InternalNetworking.performUploadRequest(newRequest(file, 1));
+        assertEquals(500, rejected.code());
+        rejected.close();
+        mChunkIndices.clear();
+
+        Response response = InternalNetworking.performUploadRequest(newRequest(file, 1));
+
+        assertEquals("done", response.body().string());
+        assertEquals(Arrays.asList(2, 3, 4), mChunkIndices);
+        assertEquals(1, mUploadIds.size());
+        assertArrayEquals(mContent, mReceived);
+    }
+
+    @Test
+    public void cancelReachesEveryChunk() throws Exception {
+        File file = newFile();
+        mHoldChunks = true;
+        final APIRequest request = newRequest(file, 3);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (mChunkIndices.size() < 3) {
+                        Thread.sleep(10);
+                    }
+                    request.cancel(true);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+
+        final long start = System.currentTimeMillis();
+        try {
+            InternalNetworking.performUploadRequest(request);
+            fail();
+        } catch (APIError expected) {
+        }
+        // every chunk is parked on the server, only cancelled calls return early
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private File newFile() throws Exception {
+        File file = mFolder.newFile();
+        Okio.buffer(Okio.sink(file)).write(mContent).close();
+        return file;
+    }
+
+    private APIRequest newRequest(File file, int parallelism) {
+        return new APIRequest.MultiPartBuilder(mServer.url("/upload").toString())
+                .addMultipartFile("file", file)
+                .addMultipartParameter("k", "v")
+                .setChunkedUpload(CHUNK_SIZE, parallelism)
+                .build();
+    }
+
+    private static ByteString formPart(ByteString body, String boundary, String name) {
+        ByteString delimiter = ByteString.encodeUtf8("\r\n--" + boundary);
+        ByteString disposition = ByteString.encodeUtf8("name=\"" + name + "\"");
+        int start = body.indexOf(disposition);
+        start = body.indexOf(ByteString.encodeUtf8("\r\n\r\n"), start) + 4;
+        return body.substring(start, body.indexOf(delimiter, start));
+    }
+}
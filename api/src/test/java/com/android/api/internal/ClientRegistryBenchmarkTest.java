@@ -0,0 +1,124 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the per-request cost of deriving clients from the registry with building them on every call.
+ */
+public class ClientRegistryBenchmarkTest {
+
+    private static final int REQUESTS = 20000;
+    // keeps the clients reachable so the JIT cannot drop the work
+    private static volatile Object sSink;
+
+    private OkHttpClient mPreviousClient;
+    private OkHttpClient mBaseClient;
+    private OkHttpClient mCustomClient;
+
+    @Before
+    public void setUp() {
+        mPreviousClient = InternalNetworking.sHttpClient;
+        mBaseClient = new OkHttpClient.Builder()
+                .cache(new Cache(new File(System.getProperty("java.io.tmpdir"), "an_registry_benchmark"), 1024))
+                .build();
+        InternalNetworking.setClient(mBaseClient);
+        mCustomClient = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        InternalNetworking.setClient(mPreviousClient);
+    }
+
+    @Test
+    public void registryCutsPerRequestSetup() {
+        Setup rebuilt = new Setup() {
+            @Override
+            public Object run() {
+                // what every custom client request and every download built before the registry
+                OkHttpClient client = mCustomClient.newBuilder().cache(mBaseClient.cache()).build();
+                return client.newBuilder().addNetworkInterceptor(DownloadProgressInterceptor.INSTANCE).build();
+            }
+        };
+        Setup registry = new Setup() {
+            @Override
+            public Object run() {
+                ClientRegistry.getClient(mCustomClient);
+                return ClientRegistry.getDownloadClient(mCustomClient);
+            }
+        };
+        Measurement before = null;
+        Measurement after = null;
+        // the best of several rounds, the first ones warm up the JIT
+        for (int i = 0; i < 5; i++) {
+            before = best(before, measure(rebuilt));
+            after = best(after, measure(registry));
+        }
+        assertTrue("registry " + after + ", rebuilt " + before, after.mBytes * 10 < before.mBytes);
+        assertTrue("registry " + after + ", rebuilt " + before, after.mNanos < before.mNanos);
+    }
+
+    private static Measurement best(Measurement best, Measurement measurement) {
+        return best == null || measurement.mNanos < best.mNanos ? measurement : best;
+    }
+
+    private static Measurement measure(Setup setup) {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long bytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            sSink = setup.run();
+        }
+        final long nanos = System.nanoTime() - start;
+        return new Measurement((threadMXBean.getThreadAllocatedBytes(threadId) - bytesBefore) / REQUESTS,
+                nanos / REQUESTS);
+    }
+
+    private interface Setup {
+        Object run();
+    }
+
+    private static final class Measurement {
+
+        final long mBytes;
+        final long mNanos;
+
+        Measurement(long bytes, long nanos) {
+            this.mBytes = bytes;
+            this.mNanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return mBytes + " B and " + mNanos + " ns per request";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClientRegistryTest {
+
+    private OkHttpClient mPreviousClient;
+    private OkHttpClient mBaseClient;
+
+    @Before
+    public void setUp() {
+        mPreviousClient = InternalNetworking.sHttpClient;
+        mBaseClient = new OkHttpClient.Builder()
+                .cache(new Cache(new File(System.getProperty("java.io.tmpdir"), "an_registry"), 1024))
+                .build();
+        InternalNetworking.setClient(mBaseClient);
+    }
+
+    @After
+    public void tearDown() {
+        InternalNetworking.setClient(mPreviousClient);
+    }
+
+    @Test
+    public void returnsBaseClientWithoutCustomClient() {
+        assertSame(mBaseClient, ClientRegistry.getClient(null));
+    }
+
+    @Test
+    public void derivesOneClientPerCustomClient() {
+        OkHttpClient custom = new OkHttpClient();
+        OkHttpClient derived = ClientRegistry.getClient(custom);
+
+        assertSame(derived, ClientRegistry.getClient(custom));
+        assertNotSame(derived, ClientRegistry.getClient(new OkHttpClient()));
+        // the caller's pool and dispatcher, the shared response cache
+        assertSame(custom.connectionPool(), derived.connectionPool());
+        assertSame(custom.dispatcher(), derived.dispatcher());
+        assertSame(mBaseClient.cache(), derived.cache());
+    }
+
+    @Test
+    public void downloadClientAddsProgressInterceptorOnce() {
+        OkHttpClient custom = new OkHttpClient();
+        OkHttpClient download = ClientRegistry.getDownloadClient(custom);
+
+        assertSame(download, ClientRegistry.getDownloadClient(custom));
+        assertTrue(download.networkInterceptors().contains(DownloadProgressInterceptor.INSTANCE));
+        assertSame(ClientRegistry.getDownloadClient(null), ClientRegistry.getDownloadClient(null));
+        assertTrue(ClientRegistry.getDownloadClient(null).networkInterceptors()
+                .contains(DownloadProgressInterceptor.INSTANCE));
+    }
+
+    @Test
+    public void rebuildsWhenBaseClientChanges() {
+        OkHttpClient custom = new OkHttpClient();
+        OkHttpClient derived = ClientRegistry.getClient(custom);
+        OkHttpClient download = ClientRegistry.getDownloadClient(null);
+
+        InternalNetworking.setClient(new OkHttpClient());
+
+        assertNotSame(derived, ClientRegistry.getClient(custom));
+        assertNotSame(download, ClientRegistry.getDownloadClient(null));
+    }
+
+    @Test
+    public void releasesDerivedClientWithCustomClient() throws Exception {
+        OkHttpClient custom = new OkHttpClient();
+        WeakReference<OkHttpClient> derived = new WeakReference<>(ClientRegistry.getClient(custom));
+        custom = null;
+        for (int i = 0; i < 50 && derived.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+            // a lookup purges the entries whose key was collected
+            ClientRegistry.getClient(new OkHttpClient());
+        }
+        assertNull(derived.get());
+    }
+}
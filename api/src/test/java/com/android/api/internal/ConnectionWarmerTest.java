@@ -0,0 +1,181 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.internal.tls.HeldCertificate;
+import okhttp3.internal.tls.SslClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionWarmerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private OkHttpClient mPreviousClient;
+    private OkHttpClient mClient;
+
+    @Before
+    public void setUp() throws Exception {
+        // SslClient.localhost() is self-signed, which newer JDKs refuse as a trust anchor
+        HeldCertificate root = new HeldCertificate.Builder()
+                .serialNumber("1")
+                .ca(1)
+                .commonName("root")
+                .build();
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .serialNumber("2")
+                .issuedBy(root)
+                .commonName("localhost")
+                .subjectAlternativeName("localhost")
+                .build();
+        SslClient sslClient = new SslClient.Builder()
+                .certificateChain(localhost, root)
+                .addTrustedCertificate(root.certificate)
+                .build();
+        mServer = new MockWebServer();
+        mServer.useHttps(sslClient.socketFactory, false);
+        mServer.start();
+        mClient = new OkHttpClient.Builder()
+                .sslSocketFactory(sslClient.socketFactory, sslClient.trustManager)
+                .build();
+        mPreviousClient = InternalNetworking.sHttpClient;
+        InternalNetworking.setClient(mClient);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        InternalNetworking.setClient(mPreviousClient);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void preconnectedTlsConnectionIsReused() throws Exception {
+        mServer.enqueue(new MockResponse());
+        mServer.enqueue(new MockResponse().setBody("ok"));
+
+        new ConnectionWarmer().preconnect(mServer.url("/").toString(), 1);
+        RecordedRequest warmup = mServer.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("HEAD", warmup.getMethod());
+        assertEquals(0, warmup.getSequenceNumber());
+        for (int i = 0; i < 500 && mClient.connectionPool().idleConnectionCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+
+        Response response = InternalNetworking.performSimpleRequest(
+                new APIRequest.GetRequestBuilder(mServer.url("/data").toString()).build());
+        assertEquals("ok", response.body().string());
+
+        // sequence numbers count per connection, 1 means the warmed socket was reused
+        assertEquals(1, mServer.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void historyIsWrittenOncePerInterval() throws Exception {
+        File historyFile = new File(mFolder.getRoot(), "hosts");
+        ConnectionWarmer warmer = new ConnectionWarmer();
+        warmer.initialize(historyFile);
+        assertTrue(awaitLoaded(warmer));
+
+        warmer.recordHost(newRequest("https://a.example.com/1"));
+        assertTrue(awaitHistory(historyFile, "https://a.example.com:443/"));
+        warmer.recordHost(newRequest("https://b.example.com/1"));
+        warmer.recordHost(newRequest("https://b.example.com/2"));
+        Thread.sleep(200);
+        // still within the interval, the new host waits for the next flush
+        assertEquals("https://a.example.com:443/\n", read(historyFile));
+
+        warmer.flush();
+        assertEquals("https://b.example.com:443/\nhttps://a.example.com:443/\n", read(historyFile));
+
+        ConnectionWarmer restarted = new ConnectionWarmer();
+        restarted.initialize(historyFile);
+        assertTrue(awaitLoaded(restarted));
+        assertEquals(Arrays.asList("https://b.example.com:443/", "https://a.example.com:443/"),
+                restarted.getPreviousHosts());
+    }
+
+    @Test
+    public void preconnectsPreviousHostsOnceHistoryIsRead() throws Exception {
+        mServer.enqueue(new MockResponse());
+        File historyFile = new File(mFolder.getRoot(), "hosts");
+        Okio.buffer(Okio.sink(historyFile)).writeUtf8(mServer.url("/").toString() + "\n").close();
+
+        ConnectionWarmer warmer = new ConnectionWarmer();
+        warmer.initialize(historyFile);
+        // asked for before the read on the disk executor may have finished
+        warmer.preconnectPreviousHosts(1);
+
+        RecordedRequest warmup = mServer.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("HEAD", warmup.getMethod());
+        assertEquals(Arrays.asList(mServer.url("/").toString()), warmer.getPreviousHosts());
+    }
+
+    private static boolean awaitLoaded(ConnectionWarmer warmer) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            if (warmer.isLoaded()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static APIRequest newRequest(String url) {
+        return new APIRequest.GetRequestBuilder(url).build();
+    }
+
+    private static boolean awaitHistory(File historyFile, String content) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            if (historyFile.exists() && read(historyFile).contains(content)) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static String read(File file) throws Exception {
+        BufferedSource source = Okio.buffer(Okio.source(file));
+        try {
+            return source.readUtf8();
+        } finally {
+            source.close();
+        }
+    }
+}
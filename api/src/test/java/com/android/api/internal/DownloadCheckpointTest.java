@@ -0,0 +1,99 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadCheckpointTest {
+
+    private static final String URL = "http://example.com/file.bin";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsThroughDisk() throws Exception {
+        File file = mFolder.newFile("file.bin");
+        new DownloadCheckpoint(URL, "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT", 42).write(file);
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.read(file);
+        assertEquals(URL, checkpoint.getUrl());
+        assertEquals(42, checkpoint.getOffset());
+        assertEquals("\"v1\"", checkpoint.getValidator());
+
+        DownloadCheckpoint.delete(file);
+        assertNull(DownloadCheckpoint.read(file));
+    }
+
+    @Test
+    public void weakETagFallsBackToLastModified() throws Exception {
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", new DownloadCheckpoint(URL, "W/\"v1\"",
+                "Wed, 21 Oct 2015 07:28:00 GMT", 0).getValidator());
+        assertNull(new DownloadCheckpoint(URL, "W/\"v1\"", null, 0).getValidator());
+    }
+
+    @Test
+    public void resumesFromAnyNonEmptyPartialFile() throws Exception {
+        File file = mFolder.newFile("file.bin");
+        // written before the first byte arrived, so its offset is still 0
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(URL, "\"v1\"", null, 0);
+        assertFalse(checkpoint.canResume(URL, file));
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(new byte[10]);
+        outputStream.close();
+        assertTrue(checkpoint.canResume(URL, file));
+        assertFalse(checkpoint.canResume("http://example.com/other.bin", file));
+        assertFalse(new DownloadCheckpoint(URL, null, null, 0).canResume(URL, file));
+    }
+
+    @Test
+    public void parsesContentRange() throws Exception {
+        Response response = response("bytes 100-199/1000");
+        assertEquals(100, DownloadCheckpoint.getContentRangeStart(response));
+        assertEquals(1000, DownloadCheckpoint.getContentRangeTotal(response));
+        assertEquals(-1, DownloadCheckpoint.getContentRangeTotal(response("bytes 100-199/*")));
+        assertEquals(-1, DownloadCheckpoint.getContentRangeStart(response("items 1-2/3")));
+    }
+
+    @Test
+    public void checkpointNeedsValidator() throws Exception {
+        assertNull(DownloadCheckpoint.fromResponse(URL, response("bytes 0-1/2"), 0));
+    }
+
+    private static Response response(String contentRange) {
+        return new Response.Builder()
+                .request(new Request.Builder().url(URL).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(206)
+                .message("Partial Content")
+                .header("Content-Range", contentRange)
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.error.DigestMismatchException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DownloadDigestTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void hashesBytesPassingThroughSink() throws Exception {
+        byte[] content = randomBytes(100 * 1024);
+        DownloadDigest digest = new DownloadDigest(null, null);
+        Buffer out = new Buffer();
+        BufferedSink sink = Okio.buffer(digest.sink(out));
+        sink.write(content, 0, 1000);
+        sink.write(content, 1000, content.length - 1000);
+        sink.close();
+        digest.verify();
+
+        assertEquals(DownloadDigest.DEFAULT_ALGORITHM, digest.getAlgorithm());
+        assertEquals(ByteString.of(content).sha256().hex(), digest.getDigest());
+        assertEquals(ByteString.of(content), out.readByteString());
+    }
+
+    @Test
+    public void resumedHashCoversExistingPrefix() throws Exception {
+        byte[] content = randomBytes(64 * 1024);
+        File file = mFolder.newFile();
+        // the file holds the prefix plus bytes past the offset that a resume will rewrite
+        Okio.buffer(Okio.sink(file)).write(content, 0, 40000).write(new byte[100]).close();
+        DownloadDigest digest = new DownloadDigest("SHA-256",
+                ByteString.of(content).sha256().hex().toUpperCase());
+        digest.update(file, 40000);
+        BufferedSink sink = Okio.buffer(digest.sink(new Buffer()));
+        sink.write(content, 40000, content.length - 40000);
+        sink.close();
+        digest.verify();
+    }
+
+    @Test
+    public void reportsMismatch() throws Exception {
+        DownloadDigest digest = new DownloadDigest("MD5", ByteString.encodeUtf8("other").md5().hex());
+        BufferedSink sink = Okio.buffer(digest.sink(new Buffer()));
+        sink.writeUtf8("content");
+        sink.close();
+        try {
+            digest.verify();
+            fail();
+        } catch (DigestMismatchException expected) {
+        }
+        assertEquals(ByteString.encodeUtf8("content").md5().hex(), digest.getDigest());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownAlgorithm() throws Exception {
+        new DownloadDigest("NOPE-1", null);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
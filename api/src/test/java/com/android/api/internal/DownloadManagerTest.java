@@ -0,0 +1,262 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+import com.android.api.interfaces.DownloadListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DownloadManagerTest {
+
+    private static final DownloadListener NO_OP = new DownloadListener() {
+        @Override
+        public void onDownloadComplete() {
+        }
+
+        @Override
+        public void onError(APIError apiError) {
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final byte[] mContent = new byte[256 * 1024];
+    // the length of the target file when each request reached the server
+    private final List<Long> mLengthsAtRequest = new CopyOnWriteArrayList<>();
+    private final Set<String> mFailingPaths = ConcurrentHashMap.newKeySet();
+    private MockWebServer mServer;
+    private File mJournalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(11).nextBytes(mContent);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                mLengthsAtRequest.add(new File(mFolder.getRoot(), path.substring(1)).length());
+                if (mFailingPaths.contains(path)) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                String range = request.getHeader("Range");
+                MockResponse response = new MockResponse().setHeader("ETag", "\"v1\"")
+                        .throttleBody(16 * 1024, 50, TimeUnit.MILLISECONDS);
+                if (range != null && "\"v1\"".equals(request.getHeader("If-Range"))) {
+                    int start = Integer.parseInt(range.substring(6, range.length() - 1));
+                    return response.setResponseCode(206)
+                            .setHeader("Content-Range", "bytes " + start + "-"
+                                    + (mContent.length - 1) + "/" + mContent.length)
+                            .setBody(new Buffer().write(mContent, start, mContent.length - start));
+                }
+                return response.setBody(new Buffer().write(mContent));
+            }
+        });
+        mServer.start();
+        mJournalFile = new File(mFolder.getRoot(), "journal.json");
+        DownloadManager.getInstance().initialize(mJournalFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DownloadManager.getInstance().setMaxConcurrentDownloads(
+                DownloadManager.DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void journalTracksPendingDownloads() throws Exception {
+        enqueue("journal.bin", "journal");
+        assertTrue(awaitJournal("journal.bin", true));
+        assertTrue(awaitIdle());
+        assertTrue(awaitJournal("journal.bin", false));
+        assertContent("journal.bin");
+    }
+
+    @Test
+    public void resumeWaitsForStoppedWriter() throws Exception {
+        enqueue("paused.bin", "paused");
+        final File file = new File(mFolder.getRoot(), "paused.bin");
+        mServer.takeRequest(5, TimeUnit.SECONDS);
+        while (file.length() == 0) {
+            Thread.sleep(10);
+        }
+        DownloadManager.getInstance().pause("paused");
+        DownloadManager.getInstance().resume("paused");
+        assertTrue(awaitIdle());
+
+        RecordedRequest resumed = mServer.takeRequest(5, TimeUnit.SECONDS);
+        // the old writer had stopped, so the offset it resumes from is where the file ended
+        assertEquals("bytes=" + mLengthsAtRequest.get(1) + "-", resumed.getHeader("Range"));
+        assertContent("paused.bin");
+    }
+
+    @Test
+    public void loweredCapStopsSurplusDownload() throws Exception {
+        DownloadManager.getInstance().setMaxConcurrentDownloads(2);
+        enqueue("first.bin", "first");
+        enqueue("second.bin", "second");
+        mServer.takeRequest(5, TimeUnit.SECONDS);
+        mServer.takeRequest(5, TimeUnit.SECONDS);
+        while (new File(mFolder.getRoot(), "second.bin").length() == 0) {
+            Thread.sleep(10);
+        }
+
+        DownloadManager.getInstance().setMaxConcurrentDownloads(1);
+        assertTrue(awaitIdle());
+
+        RecordedRequest resumed = mServer.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/second.bin", resumed.getPath());
+        assertTrue(resumed.getHeader("Range").startsWith("bytes="));
+        assertNull(mServer.takeRequest(100, TimeUnit.MILLISECONDS));
+        assertContent("first.bin");
+        assertContent("second.bin");
+    }
+
+    @Test
+    public void failedDownloadStaysRetryable() throws Exception {
+        mFailingPaths.add("/failed.bin");
+        enqueue("failed.bin", "failed");
+        assertTrue(awaitJournal("\"failed\":true", true));
+        assertEquals(1, DownloadManager.getInstance().getPendingCount());
+
+        mFailingPaths.clear();
+        DownloadManager.getInstance().resume("failed");
+        assertTrue(awaitIdle());
+        assertContent("failed.bin");
+    }
+
+    @Test
+    public void cancelDropsFailedDownload() throws Exception {
+        mFailingPaths.add("/cancelled.bin");
+        enqueue("cancelled.bin", "cancelled");
+        assertTrue(awaitJournal("\"failed\":true", true));
+        DownloadManager.getInstance().cancel("cancelled");
+        assertTrue(awaitIdle());
+        assertTrue(awaitJournal("cancelled.bin", false));
+    }
+
+    @Test
+    public void credentialsStayOutOfJournal() throws Exception {
+        APIRequest request = new APIRequest.DownloadBuilder(mServer.url("/secret.bin").toString(),
+                mFolder.getRoot().getPath(), "secret.bin")
+                .setTag("secret")
+                .addHeaders("Authorization", "Bearer token-1234")
+                .addHeaders("Accept", "application/octet-stream")
+                .setUserAgent("downloader/1.0")
+                .setMaxBytesPerSecond(10 * 1024 * 1024)
+                .build();
+        DownloadManager.getInstance().enqueue(request, NO_OP);
+        assertTrue(awaitJournal("\"headersWithheld\":true", true));
+        String journal = readJournal();
+        assertFalse(journal.contains("token-1234"));
+        assertTrue(journal.contains("application/octet-stream"));
+        assertTrue(journal.contains("downloader/1.0"));
+        assertTrue(journal.contains("10485760"));
+
+        // the rebuilt request still carries everything that was enqueued
+        RecordedRequest recorded = mServer.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("Bearer token-1234", recorded.getHeader("Authorization"));
+        assertEquals("downloader/1.0", recorded.getHeader("User-Agent"));
+        assertTrue(awaitIdle());
+        assertContent("secret.bin");
+    }
+
+    @Test
+    public void rejectsSettingsTheJournalCannotRestore() {
+        APIRequest request = new APIRequest.DownloadBuilder(mServer.url("/client.bin").toString(),
+                mFolder.getRoot().getPath(), "client.bin")
+                .setOkHttpClient(new OkHttpClient())
+                .build();
+        try {
+            DownloadManager.getInstance().enqueue(request, NO_OP);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, DownloadManager.getInstance().getPendingCount());
+    }
+
+    private void enqueue(String fileName, String tag) {
+        APIRequest request = new APIRequest.DownloadBuilder(mServer.url("/" + fileName).toString(),
+                mFolder.getRoot().getPath(), fileName)
+                .setTag(tag)
+                .build();
+        DownloadManager.getInstance().enqueue(request, NO_OP);
+    }
+
+    private static boolean awaitIdle() throws Exception {
+        for (int i = 0; i < 1000 && DownloadManager.getInstance().getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        return DownloadManager.getInstance().getPendingCount() == 0;
+    }
+
+    private String readJournal() throws Exception {
+        BufferedSource source = Okio.buffer(Okio.source(mJournalFile));
+        String journal = source.readUtf8();
+        source.close();
+        return journal;
+    }
+
+    private boolean awaitJournal(String text, boolean present) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            if (mJournalFile.exists()) {
+                if (readJournal().contains(text) == present) {
+                    return true;
+                }
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private void assertContent(String fileName) throws Exception {
+        File file = new File(mFolder.getRoot(), fileName);
+        assertEquals(ByteString.of(mContent), Okio.buffer(Okio.source(file)).readByteString());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HedgePolicyTest {
+
+    @Before
+    public void setUp() {
+        HedgePolicy.reset();
+    }
+
+    @After
+    public void tearDown() {
+        HedgePolicy.setBudgetRatio(HedgePolicy.DEFAULT_BUDGET_RATIO);
+        HedgePolicy.reset();
+    }
+
+    @Test
+    public void fixedDelayIsUsedAsIs() {
+        assertEquals(250, HedgePolicy.getHedgeDelay(250, "example.com"));
+    }
+
+    @Test
+    public void adaptiveDelayIsP95OfRecentLatencies() {
+        for (int i = 1; i < 20; i++) {
+            HedgePolicy.recordLatency("example.com", i);
+        }
+        // not enough samples yet, the request is not hedged
+        assertEquals(-1, HedgePolicy.getHedgeDelay(APIConstants.ADAPTIVE_HEDGE_DELAY, "example.com"));
+
+        for (int i = 20; i <= 100; i++) {
+            HedgePolicy.recordLatency("example.com", i);
+        }
+        // only the last 64 samples, 37 to 100, are kept
+        assertEquals(97, HedgePolicy.getHedgeDelay(APIConstants.ADAPTIVE_HEDGE_DELAY, "example.com"));
+    }
+
+    @Test
+    public void hedgesAreLimitedByBudget() {
+        HedgePolicy.setBudgetRatio(0.5f);
+        assertFalse(HedgePolicy.tryWithdraw());
+        HedgePolicy.deposit();
+        assertFalse(HedgePolicy.tryWithdraw());
+        HedgePolicy.deposit();
+        assertTrue(HedgePolicy.tryWithdraw());
+        assertFalse(HedgePolicy.tryWithdraw());
+    }
+
+    @Test
+    public void budgetBalanceIsCapped() {
+        HedgePolicy.setBudgetRatio(1);
+        for (int i = 0; i < 100; i++) {
+            HedgePolicy.deposit();
+        }
+        int hedges = 0;
+        while (HedgePolicy.tryWithdraw()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+
+    @Test
+    public void leastRecentlyUsedHostsAreDropped() {
+        for (int i = 0; i < 20; i++) {
+            HedgePolicy.recordLatency("first.example.com", 10);
+        }
+        for (int host = 0; host < HedgePolicy.MAX_HOSTS * 2; host++) {
+            HedgePolicy.recordLatency("host" + host + ".example.com", 10);
+            if (host == HedgePolicy.MAX_HOSTS / 2) {
+                HedgePolicy.recordLatency("first.example.com", 10);
+            }
+        }
+        assertEquals(HedgePolicy.MAX_HOSTS, HedgePolicy.getHostCount());
+        assertEquals(-1, HedgePolicy.getHedgeDelay(APIConstants.ADAPTIVE_HEDGE_DELAY, "first.example.com"));
+
+        for (int host = HedgePolicy.MAX_HOSTS * 2; host < HedgePolicy.MAX_HOSTS * 3; host++) {
+            HedgePolicy.recordLatency("host" + host + ".example.com", 10);
+            HedgePolicy.getHedgeDelay(APIConstants.ADAPTIVE_HEDGE_DELAY, "host0.example.com");
+        }
+        assertEquals(HedgePolicy.MAX_HOSTS, HedgePolicy.getHostCount());
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgedCallTest {
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final AtomicInteger mArrived = new AtomicInteger();
+    private MockWebServer mServer;
+    private volatile boolean mHoldAll;
+
+    @Before
+    public void setUp() throws Exception {
+        HedgePolicy.reset();
+        HedgePolicy.setBudgetRatio(1);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // the first call stalls, the hedge gets an answer right away
+                if (mArrived.getAndIncrement() == 0 || mHoldAll) {
+                    mRelease.await(10, TimeUnit.SECONDS);
+                    return new MockResponse().setBody("slow");
+                }
+                return new MockResponse().setBody("fast");
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mServer.shutdown();
+        HedgePolicy.setBudgetRatio(HedgePolicy.DEFAULT_BUDGET_RATIO);
+        HedgePolicy.reset();
+    }
+
+    @Test
+    public void hedgeAnswersForStalledCall() throws Exception {
+        APIRequest request = newRequest();
+        long start = System.currentTimeMillis();
+
+        Response response = InternalNetworking.performSimpleRequest(request);
+
+        assertEquals("fast", response.body().string());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(2, mServer.getRequestCount());
+        // the stalled call was cancelled, the request now points at the one that answered
+        assertFalse(request.getCall().isCanceled());
+    }
+
+    @Test
+    public void noHedgeWithoutBudget() throws Exception {
+        HedgePolicy.setBudgetRatio(0);
+        mRelease.countDown();
+
+        Response response = InternalNetworking.performSimpleRequest(newRequest());
+
+        assertEquals("slow", response.body().string());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void cancelStopsWaitingForCalls() throws Exception {
+        mHoldAll = true;
+        final APIRequest request = newRequest();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (mArrived.get() < 2) {
+                        Thread.sleep(10);
+                    }
+                    request.cancel(true);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+
+        long start = System.currentTimeMillis();
+        try {
+            InternalNetworking.performSimpleRequest(request);
+            fail();
+        } catch (APIError expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void hedgeIsSkippedWhenDispatcherWouldQueueIt() throws Exception {
+        mHoldAll = true;
+        OkHttpClient client = new OkHttpClient();
+        client.dispatcher().setMaxRequestsPerHost(1);
+        // holds the host's only dispatcher slot
+        client.newCall(new Request.Builder().url(mServer.url("/blocker")).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+        while (mArrived.get() < 1) {
+            Thread.sleep(10);
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                mRelease.countDown();
+            }
+        }).start();
+
+        APIRequest request = new APIRequest.GetRequestBuilder(mServer.url("/").toString())
+                .setOkHttpClient(client)
+                .setHedging(100, TimeUnit.MILLISECONDS)
+                .build();
+        Response response = InternalNetworking.performSimpleRequest(request);
+
+        // the primary ran on this thread, outside the dispatcher, and no hedge was queued behind it
+        assertEquals("slow", response.body().string());
+        assertEquals(2, mServer.getRequestCount());
+        assertTrue(HedgePolicy.tryWithdraw());
+    }
+
+    private APIRequest newRequest() {
+        return new APIRequest.GetRequestBuilder(mServer.url("/").toString())
+                .setHedging(100, TimeUnit.MILLISECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+import com.android.api.model.Progress;
+import com.android.api.model.ProgressSnapshot;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProgressDispatcherTest {
+
+    @After
+    public void tearDown() {
+        ProgressDispatcher.setThreshold(APIConstants.DEFAULT_PROGRESS_MIN_INTERVAL_MILLIS, 0);
+    }
+
+    @Test
+    public void coalescesUpdatesBelowByteThreshold() {
+        // the interval never elapses, so only the byte delta lets an update through
+        ProgressDispatcher.setThreshold(Long.MAX_VALUE, 1000);
+        CountingDispatcher dispatcher = new CountingDispatcher(true);
+        for (long bytes = 0; bytes < 10000; bytes += 100) {
+            dispatcher.update(bytes, 10000, false);
+        }
+        dispatcher.update(10000, 10000, true);
+        // 1000, 2000 ... 9000 and the final update
+        assertEquals(10, dispatcher.posts);
+        assertEquals(10000, dispatcher.lastProgress.currentBytes);
+    }
+
+    @Test
+    public void keepsOneMessageInFlight() {
+        ProgressDispatcher.setThreshold(0, 0);
+        CountingDispatcher dispatcher = new CountingDispatcher(false);
+        for (long bytes = 1; bytes <= 100; bytes++) {
+            dispatcher.update(bytes, 100, false);
+        }
+        assertEquals(1, dispatcher.posts);
+        // the queued message reads the latest values when it runs
+        Progress progress = dispatcher.consume();
+        assertEquals(100, progress.currentBytes);
+        assertEquals(100, progress.totalBytes);
+    }
+
+    @Test
+    public void ignoresUpdatesAfterDone() {
+        ProgressDispatcher.setThreshold(0, 0);
+        ProgressSnapshot snapshot = new ProgressSnapshot();
+        CountingDispatcher dispatcher = new CountingDispatcher(snapshot, true);
+        dispatcher.update(50, 50, true);
+        dispatcher.update(60, 50, false);
+        assertEquals(1, dispatcher.posts);
+        assertEquals(50, snapshot.getCurrentBytes());
+    }
+
+    private static class CountingDispatcher extends ProgressDispatcher {
+
+        private final boolean mConsume;
+        int posts;
+        Progress lastProgress;
+
+        CountingDispatcher(boolean consume) {
+            this(new ProgressSnapshot(), consume);
+        }
+
+        CountingDispatcher(ProgressSnapshot snapshot, boolean consume) {
+            super(null, snapshot);
+            mConsume = consume;
+        }
+
+        @Override
+        void post() {
+            posts++;
+            if (mConsume) {
+                // stands in for the handler running the message right away
+                lastProgress = consume();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+import com.android.api.interfaces.DownloadListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResumableDownloadTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final byte[] mContent = new byte[256 * 1024];
+    private MockWebServer mServer;
+    private volatile String mETag = "\"v1\"";
+    private volatile boolean mDropFirstResponse;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(7).nextBytes(mContent);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String range = request.getHeader("Range");
+                MockResponse response = new MockResponse();
+                if (mETag != null) {
+                    response.setHeader("ETag", mETag);
+                }
+                if (range != null && mETag != null && mETag.equals(request.getHeader("If-Range"))) {
+                    int start = Integer.parseInt(range.substring(6, range.length() - 1));
+                    response.setResponseCode(206)
+                            .setHeader("Content-Range", "bytes " + start + "-"
+                                    + (mContent.length - 1) + "/" + mContent.length)
+                            .setBody(new Buffer().write(mContent, start, mContent.length - start));
+                } else {
+                    response.setBody(new Buffer().write(mContent));
+                }
+                if (mDropFirstResponse) {
+                    mDropFirstResponse = false;
+                    response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+                }
+                return response;
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void resumesAfterProcessDeath() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+        // a killed process leaves the partial file and the checkpoint written when it started
+        Okio.buffer(Okio.sink(file)).write(mContent, 0, 100000).close();
+        new DownloadCheckpoint(url(), mETag, null, 0).write(file);
+
+        download(file);
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("bytes=100000-", request.getHeader("Range"));
+        assertEquals(mETag, request.getHeader("If-Range"));
+        assertContent(file);
+    }
+
+    @Test
+    public void resumesAfterDroppedConnection() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+        mDropFirstResponse = true;
+        try {
+            InternalNetworking.performDownloadRequest(newRequest(file));
+            fail();
+        } catch (APIError expected) {
+        }
+        final long partialLength = file.length();
+        assertTrue(partialLength > 0 && partialLength < mContent.length);
+        assertTrue(new File(file.getPath() + ".checkpoint").exists());
+
+        download(file);
+
+        mServer.takeRequest();
+        assertEquals("bytes=" + partialLength + "-", mServer.takeRequest().getHeader("Range"));
+        assertContent(file);
+    }
+
+    @Test
+    public void restartsWhenServerCopyChanged() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+        Okio.buffer(Okio.sink(file)).write(new byte[1000]).close();
+        new DownloadCheckpoint(url(), "\"v0\"", null, 0).write(file);
+
+        download(file);
+
+        assertEquals("\"v0\"", mServer.takeRequest().getHeader("If-Range"));
+        assertContent(file);
+    }
+
+    @Test
+    public void keepsExistingFileWhenUnresumableDownloadFails() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+        Okio.buffer(Okio.sink(file)).write(new byte[1000]).close();
+        mETag = null;
+        mDropFirstResponse = true;
+        try {
+            InternalNetworking.performDownloadRequest(newRequest(file));
+            fail();
+        } catch (APIError expected) {
+        }
+        assertEquals(ByteString.of(new byte[1000]),
+                Okio.buffer(Okio.source(file)).readByteString());
+        assertFalse(new File(file.getPath() + ".checkpoint").exists());
+    }
+
+    private String url() {
+        return mServer.url("/file.bin").toString();
+    }
+
+    private APIRequest newRequest(File file) {
+        return new APIRequest.DownloadBuilder(url(), file.getParent(), file.getName())
+                .setResumable(true)
+                .setExecutor(DIRECT)
+                .build();
+    }
+
+    // errors are posted to the main thread, so only successful downloads are run this way
+    private void download(File file) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        newRequest(file).startDownload(new DownloadListener() {
+                    @Override
+                    public void onDownloadComplete() {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(APIError apiError) {
+                    }
+                });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    private void assertContent(File file) throws Exception {
+        assertEquals(ByteString.of(mContent), Okio.buffer(Okio.source(file)).readByteString());
+        assertFalse(new File(file.getPath() + ".checkpoint").exists());
+    }
+}
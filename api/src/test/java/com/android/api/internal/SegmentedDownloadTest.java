@@ -0,0 +1,180 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIConstants;
+import com.android.api.common.APIRequest;
+import com.android.api.error.APIError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedDownloadTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final byte[] mContent = new byte[(int) (3 * APIConstants.MIN_DOWNLOAD_SEGMENT_SIZE)];
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final AtomicInteger mSegmentRequests = new AtomicInteger();
+    private MockWebServer mServer;
+    private volatile boolean mHoldSegments;
+    private volatile int mFailSegmentStart = -1;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(3).nextBytes(mContent);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String range = request.getHeader("Range");
+                if (range == null) {
+                    return new MockResponse().setBody(new Buffer().write(mContent));
+                }
+                int dash = range.indexOf('-');
+                int start = Integer.parseInt(range.substring(6, dash));
+                int end = Integer.parseInt(range.substring(dash + 1));
+                if (start > 0 || end > 0) {
+                    mSegmentRequests.incrementAndGet();
+                    if (start == mFailSegmentStart) {
+                        return new MockResponse().setResponseCode(500);
+                    }
+                    if (mHoldSegments) {
+                        mRelease.await(10, TimeUnit.SECONDS);
+                    }
+                }
+                return new MockResponse().setResponseCode(206)
+                        .setHeader("ETag", "\"v1\"")
+                        .setHeader("Content-Range", "bytes " + start + "-" + end
+                                + "/" + mContent.length)
+                        .setBody(new Buffer().write(mContent, start, end - start + 1));
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void assemblesSegmentsIntoFile() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+
+        Response response = InternalNetworking.performDownloadRequest(newRequest(file, false));
+
+        assertEquals(206, response.code());
+        assertEquals("bytes 0-0/" + mContent.length, response.header("Content-Range"));
+        assertEquals(3, mSegmentRequests.get());
+        assertEquals(ByteString.of(mContent), Okio.buffer(Okio.source(file)).readByteString());
+        assertFalse(new File(file.getPath() + APIConstants.TEMP_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void cancelReachesEverySegment() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+        mHoldSegments = true;
+        final APIRequest request = newRequest(file, false);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (mSegmentRequests.get() < 3) {
+                        Thread.sleep(10);
+                    }
+                    request.cancel(true);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+
+        final long start = System.currentTimeMillis();
+        try {
+            InternalNetworking.performDownloadRequest(request);
+            fail();
+        } catch (APIError expected) {
+        }
+        // every segment is still parked on the server, only a cancelled call returns early
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertFalse(file.exists());
+        assertFalse(new File(file.getPath() + APIConstants.TEMP_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void failingSegmentStopsTheOthers() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+        mHoldSegments = true;
+        // the last segment fails while the first one, which runs on the caller's thread, is held
+        mFailSegmentStart = 2 * (mContent.length / 3);
+
+        final long start = System.currentTimeMillis();
+        try {
+            InternalNetworking.performDownloadRequest(newRequest(file, false));
+            fail();
+        } catch (APIError expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertFalse(file.exists());
+        assertFalse(new File(file.getPath() + APIConstants.TEMP_FILE_SUFFIX).exists());
+    }
+
+    @Test
+    public void resumableDownloadUsesSingleStream() throws Exception {
+        File file = new File(mFolder.getRoot(), "file.bin");
+
+        InternalNetworking.performDownloadRequest(newRequest(file, true));
+
+        assertEquals(0, mSegmentRequests.get());
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(ByteString.of(mContent), Okio.buffer(Okio.source(file)).readByteString());
+    }
+
+    private APIRequest newRequest(File file, boolean resumable) {
+        return new APIRequest.DownloadBuilder(mServer.url("/file.bin").toString(),
+                file.getParent(), file.getName())
+                .setParallelSegments(3)
+                .setResumable(resumable)
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import com.android.api.common.APIRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamedUploadTest {
+
+    private final byte[] mContent = new byte[200 * 1024];
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(3).nextBytes(mContent);
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void sendsStreamedParts() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("ok"));
+        APIRequest request = new APIRequest.MultiPartBuilder(mServer.url("/upload").toString())
+                .addMultipartParameter("k", "v")
+                .addMultipartStream("stream", "stream.bin", new ByteArrayInputStream(mContent))
+                .addMultipartSource("source", "source.bin", new Buffer().write(mContent, 0, 1000), 1000)
+                .build();
+
+        Response response = InternalNetworking.performUploadRequest(request);
+        assertEquals(200, response.code());
+        response.close();
+
+        ByteString body = mServer.takeRequest().getBody().readByteString();
+        assertTrue(body.indexOf(ByteString.of(mContent)) > 0);
+        assertTrue(body.indexOf(ByteString.of(mContent, 0, 1000)) > 0);
+    }
+
+    @Test
+    public void reportsProgressOverStreamedParts() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("ok"));
+        APIRequest request = new APIRequest.MultiPartBuilder(mServer.url("/upload").toString())
+                .addMultipartStream("stream", "stream.bin", new ByteArrayInputStream(mContent),
+                        mContent.length)
+                .build();
+
+        InternalNetworking.performUploadRequest(request).close();
+
+        RecordedRequest recorded = mServer.takeRequest();
+        assertEquals(recorded.getBodySize(), request.getProgressSnapshot().getCurrentBytes());
+        assertEquals(recorded.getBodySize(), request.getProgressSnapshot().getTotalBytes());
+        assertTrue(request.getProgressSnapshot().isDone());
+    }
+
+    @Test
+    public void doesNotRetryStreamedParts() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(408));
+        mServer.enqueue(new MockResponse().setBody("ok"));
+        APIRequest request = new APIRequest.MultiPartBuilder(mServer.url("/upload").toString())
+                .addMultipartStream("stream", "stream.bin", new ByteArrayInputStream(mContent))
+                .build();
+
+        // the timeout reaches the caller instead of a replay of the consumed stream
+        Response response = InternalNetworking.performUploadRequest(request);
+        assertEquals(408, response.code());
+        response.close();
+        assertEquals(1, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long BYTES_PER_SECOND = 400 * 1024;
+    private static final int CHUNK = 8 * 1024;
+
+    @Test
+    public void holdsSingleReaderToRate() throws Exception {
+        TokenBucket bucket = new TokenBucket();
+        final long start = System.nanoTime();
+        for (int i = 0; i < 25; i++) {
+            bucket.acquire(CHUNK, BYTES_PER_SECOND);
+        }
+        assertElapsed(start, 25 * CHUNK);
+    }
+
+    @Test
+    public void sharesRateBetweenReaders() throws Exception {
+        final TokenBucket bucket = new TokenBucket();
+        final CountDownLatch done = new CountDownLatch(4);
+        final long start = System.nanoTime();
+        for (int t = 0; t < 4; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10; i++) {
+                            bucket.acquire(CHUNK, BYTES_PER_SECOND);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assertElapsed(start, 40 * CHUNK);
+    }
+
+    @Test
+    public void unlimitedDoesNotWait() throws Exception {
+        TokenBucket bucket = new TokenBucket();
+        final long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            bucket.acquire(CHUNK, 0);
+        }
+        assertTrue(System.nanoTime() - start < 100 * 1000000L);
+    }
+
+    private static void assertElapsed(long start, long bytes) {
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+        final long expectedMillis = bytes * 1000 / BYTES_PER_SECOND;
+        // the bucket starts empty, so the whole amount is paid for at the configured rate
+        assertTrue("took " + elapsedMillis + " ms, expected " + expectedMillis,
+                elapsedMillis >= expectedMillis * 9 / 10 && elapsedMillis < expectedMillis * 2);
+    }
+}
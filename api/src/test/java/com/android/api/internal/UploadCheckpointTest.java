@@ -0,0 +1,112 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UploadCheckpointTest {
+
+    private static final String URL = "http://localhost/upload";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void persistsAcknowledgedChunks() throws Exception {
+        File file = newFile(1000);
+        UploadCheckpoint checkpoint = UploadCheckpoint.load(URL, file, 100);
+        assertFalse(checkpoint.isAcknowledged(0));
+        checkpoint.acknowledge(0);
+        checkpoint.acknowledge(3);
+
+        UploadCheckpoint reloaded = UploadCheckpoint.load(URL, file, 100);
+        assertEquals(checkpoint.getUploadId(), reloaded.getUploadId());
+        assertTrue(reloaded.isAcknowledged(0));
+        assertFalse(reloaded.isAcknowledged(1));
+        assertTrue(reloaded.isAcknowledged(3));
+        reloaded.delete();
+    }
+
+    @Test
+    public void differentChunkingStartsFresh() throws Exception {
+        File file = newFile(1000);
+        UploadCheckpoint checkpoint = UploadCheckpoint.load(URL, file, 100);
+        checkpoint.acknowledge(0);
+
+        UploadCheckpoint other = UploadCheckpoint.load(URL, file, 200);
+        assertNotEquals(checkpoint.getUploadId(), other.getUploadId());
+        assertFalse(other.isAcknowledged(0));
+        checkpoint.delete();
+    }
+
+    @Test
+    public void changedFileStartsFresh() throws Exception {
+        File file = newFile(1000);
+        UploadCheckpoint checkpoint = UploadCheckpoint.load(URL, file, 100);
+        checkpoint.acknowledge(0);
+        Okio.buffer(Okio.appendingSink(file)).write(new byte[10]).close();
+
+        UploadCheckpoint other = UploadCheckpoint.load(URL, file, 100);
+        assertNotEquals(checkpoint.getUploadId(), other.getUploadId());
+        assertFalse(other.isAcknowledged(0));
+        checkpoint.delete();
+    }
+
+    @Test
+    public void deleteForgetsProgress() throws Exception {
+        File file = newFile(1000);
+        UploadCheckpoint checkpoint = UploadCheckpoint.load(URL, file, 100);
+        checkpoint.acknowledge(1);
+        checkpoint.delete();
+
+        UploadCheckpoint reloaded = UploadCheckpoint.load(URL, file, 100);
+        assertNotEquals(checkpoint.getUploadId(), reloaded.getUploadId());
+        assertFalse(reloaded.isAcknowledged(1));
+    }
+
+    @Test
+    public void storesCheckpointsInConfiguredDirectory() throws Exception {
+        File directory = mFolder.newFolder();
+        UploadCheckpoint.setDirectory(directory);
+        try {
+            UploadCheckpoint checkpoint = UploadCheckpoint.load(URL, newFile(1000), 100);
+            checkpoint.acknowledge(0);
+            assertEquals(1, directory.listFiles().length);
+            checkpoint.delete();
+            assertEquals(0, directory.listFiles().length);
+        } finally {
+            UploadCheckpoint.setDirectory(null);
+        }
+    }
+
+    private File newFile(int size) throws Exception {
+        File file = mFolder.newFile();
+        Okio.buffer(Okio.sink(file)).write(new byte[size]).close();
+        return file;
+    }
+}
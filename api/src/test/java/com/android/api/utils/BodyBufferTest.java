@@ -0,0 +1,111 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.utils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BodyBufferTest {
+
+    @Test
+    public void readsWholeBody() throws Exception {
+        byte[] bytes = randomBytes(300 * 1024);
+        Utils.BodyBuffer body = new Utils.BodyBuffer();
+        body.readFrom(new Buffer().write(bytes));
+        assertEquals(bytes.length, body.length);
+        assertEquals(ByteString.of(bytes), ByteString.of(body.data, 0, body.length));
+    }
+
+    @Test
+    public void reusesBufferAcrossDecodes() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int size = 512 * 1024;
+        final Buffer[] sources = new Buffer[20];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = new Buffer().write(randomBytes(size));
+        }
+        Utils.BodyBuffer body = new Utils.BodyBuffer();
+        body.readFrom(sources[0]);
+        body.trim();
+
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 1; i < sources.length; i++) {
+            body.readFrom(sources[i]);
+            assertEquals(size, body.length);
+            body.trim();
+        }
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        // reading 19 more bodies must not cost even one more copy of a body
+        assertTrue("allocated " + allocated, allocated < size);
+    }
+
+    @Test
+    public void sizesLargeBodyFromContentLength() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int size = 3 * 1024 * 1024;
+        final byte[] bytes = randomBytes(size);
+        Utils.BodyBuffer body = new Utils.BodyBuffer();
+        for (int i = 0; i < 3; i++) {
+            Buffer source = new Buffer().write(bytes);
+            final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            body.readFrom(source, size);
+            final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+            assertEquals(ByteString.of(bytes), ByteString.of(body.data, 0, body.length));
+            // a single buffer of the body's size, growing by doubling would allocate about 8 MB
+            assertEquals(size, body.data.length);
+            assertTrue("allocated " + allocated, allocated < size + 64 * 1024);
+            body.trim();
+        }
+    }
+
+    @Test
+    public void readsLargeBodyOfUnknownLength() throws Exception {
+        byte[] bytes = randomBytes(3 * 1024 * 1024 + 17);
+        Utils.BodyBuffer body = new Utils.BodyBuffer();
+        body.readFrom(new Buffer().write(bytes), -1);
+        assertEquals(ByteString.of(bytes), ByteString.of(body.data, 0, body.length));
+    }
+
+    @Test
+    public void dropsOversizedBuffer() throws Exception {
+        Utils.BodyBuffer body = new Utils.BodyBuffer();
+        body.readFrom(new Buffer().write(randomBytes(Utils.BODY_BUFFER_MAX_RETAINED_SIZE + 1)));
+        assertTrue(body.data.length > Utils.BODY_BUFFER_MAX_RETAINED_SIZE);
+        body.trim();
+        assertTrue(body.data.length <= Utils.BODY_BUFFER_MAX_RETAINED_SIZE);
+        assertEquals(0, body.length);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
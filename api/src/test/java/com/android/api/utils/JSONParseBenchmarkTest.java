@@ -0,0 +1,185 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.utils;
+
+import com.android.api.gsonparserfactory.GsonParserFactory;
+import com.android.api.interfaces.Parser;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares heap allocation and time of the streamed parsers with the String based parsing they replaced,
+ * on a payload of about 1 MB.
+ */
+public class JSONParseBenchmarkTest {
+
+    private static final int RUNS = 10;
+
+    private static ByteString sArrayPayload;
+    private static ByteString sObjectPayload;
+
+    static class Item {
+        int id;
+        String name;
+        double score;
+        boolean active;
+        List<String> tags;
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; builder.length() < 1024 * 1024; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item number ").append(i).append('"')
+                    .append(",\"score\":").append(i * 0.25)
+                    .append(",\"active\":").append(i % 2 == 0)
+                    .append(",\"tags\":[\"a").append(i % 7).append("\",\"b").append(i % 11).append("\"]}");
+        }
+        builder.append(']');
+        sArrayPayload = ByteString.encodeUtf8(builder.toString());
+        sObjectPayload = ByteString.encodeUtf8("{\"items\":" + builder + "}");
+    }
+
+    @Test
+    public void streamedJSONObjectAllocatesLessThanString() throws Exception {
+        Measurement string = measure(new Parse() {
+            @Override
+            public Object parse(BufferedSource source) throws Exception {
+                return new JSONObject(source.readUtf8());
+            }
+        }, sObjectPayload);
+        Measurement streamed = measure(new Parse() {
+            @Override
+            public Object parse(BufferedSource source) throws Exception {
+                return JSONStreamParser.parseObject(source);
+            }
+        }, sObjectPayload);
+
+        // the String costs two bytes per character on top of the tokenizer's own copies
+        assertTrue("streamed " + streamed + ", string " + string, streamed.mBytes * 2 < string.mBytes);
+        assertTrue("streamed " + streamed + ", string " + string, streamed.mNanos < string.mNanos * 2);
+    }
+
+    @Test
+    public void streamedJSONArrayAllocatesLessThanString() throws Exception {
+        Measurement string = measure(new Parse() {
+            @Override
+            public Object parse(BufferedSource source) throws Exception {
+                return new JSONArray(source.readUtf8());
+            }
+        }, sArrayPayload);
+        Measurement streamed = measure(new Parse() {
+            @Override
+            public Object parse(BufferedSource source) throws Exception {
+                return JSONStreamParser.parseArray(source);
+            }
+        }, sArrayPayload);
+
+        assertTrue("streamed " + streamed + ", string " + string, streamed.mBytes * 2 < string.mBytes);
+        assertTrue("streamed " + streamed + ", string " + string, streamed.mNanos < string.mNanos * 2);
+    }
+
+    @Test
+    public void cachedGsonParserKeepsUpWithPerRequestLookup() throws Exception {
+        final Type type = new TypeToken<List<Item>>() {
+        }.getType();
+        final Gson gson = new Gson();
+        final GsonParserFactory factory = new GsonParserFactory(gson);
+        Measurement perRequest = measure(new Parse() {
+            @Override
+            public Object parse(BufferedSource source) throws Exception {
+                // what the factory did on every request before parsers were cached
+                TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
+                return adapter.fromJson(ResponseBody.create(MediaType.parse("application/json"),
+                        -1, source).charStream());
+            }
+        }, sArrayPayload);
+        Measurement cached = measure(new Parse() {
+            @Override
+            public Object parse(BufferedSource source) throws Exception {
+                Parser<ResponseBody, ?> parser = factory.responseBodyParser(type);
+                return parser.convert(ResponseBody.create(MediaType.parse("application/json"),
+                        -1, source));
+            }
+        }, sArrayPayload);
+
+        @SuppressWarnings("unchecked")
+        List<Item> items = (List<Item>) factory.responseBodyParser(type).convert(ResponseBody.create(
+                MediaType.parse("application/json"), -1, new Buffer().write(sArrayPayload)));
+        assertEquals(new JSONArray(sArrayPayload.utf8()).length(), items.size());
+        // Gson caches adapters itself, so the factory's cache only saves the lookup and parser allocation
+        assertTrue("cached " + cached + ", per request " + perRequest, cached.mNanos < perRequest.mNanos * 2);
+    }
+
+    // allocation and time of the cheapest of the runs, after a warm up run
+    private static Measurement measure(Parse parse, ByteString payload) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        Measurement best = new Measurement();
+        for (int run = 0; run <= RUNS; run++) {
+            Buffer source = new Buffer().write(payload);
+            long bytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            long nanos = System.nanoTime();
+            parse.parse(source);
+            nanos = System.nanoTime() - nanos;
+            bytes = threadMXBean.getThreadAllocatedBytes(threadId) - bytes;
+            if (run > 0) {
+                best.mNanos = Math.min(best.mNanos, nanos);
+                best.mBytes = Math.min(best.mBytes, bytes);
+            }
+        }
+        return best;
+    }
+
+    private interface Parse {
+        Object parse(BufferedSource source) throws Exception;
+    }
+
+    private static final class Measurement {
+        long mNanos = Long.MAX_VALUE;
+        long mBytes = Long.MAX_VALUE;
+
+        @Override
+        public String toString() {
+            return mBytes + " bytes in " + mNanos / 1000 + "us";
+        }
+    }
+}
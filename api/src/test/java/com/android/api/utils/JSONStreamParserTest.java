@@ -0,0 +1,67 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JSONStreamParserTest {
+
+    private static final String OBJECT = "{\"name\":\"api\",\"count\":3,\"big\":12345678901,"
+            + "\"ratio\":0.5,\"on\":true,\"none\":null,\"list\":[1,\"two\",{\"three\":3}]}";
+
+    @Test
+    public void parsesObjectLikeJSONObject() throws Exception {
+        JSONObject parsed = JSONStreamParser.parseObject(new Buffer().writeUtf8(OBJECT));
+        JSONObject expected = new JSONObject(OBJECT);
+        assertEquals(expected.toString(), parsed.toString());
+        assertEquals(Integer.valueOf(3), parsed.get("count"));
+        assertEquals(Long.valueOf(12345678901L), parsed.get("big"));
+        assertEquals(Double.valueOf(0.5), parsed.get("ratio"));
+        assertTrue(parsed.isNull("none"));
+    }
+
+    @Test
+    public void parsesArrayLikeJSONArray() throws Exception {
+        String json = "[" + OBJECT + ",[],\"x\",-7,1e3]";
+        JSONArray parsed = JSONStreamParser.parseArray(new Buffer().writeUtf8(json));
+        assertEquals(new JSONArray(json).toString(), parsed.toString());
+        assertEquals(5, parsed.length());
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsArrayWhenObjectExpected() throws Exception {
+        JSONStreamParser.parseObject(new Buffer().writeUtf8("[1,2]"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsObjectWhenArrayExpected() throws Exception {
+        JSONStreamParser.parseArray(new Buffer().writeUtf8(OBJECT));
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsTrailingContent() throws Exception {
+        JSONStreamParser.parseObject(new Buffer().writeUtf8("{\"a\":1}{\"b\":2}"));
+    }
+}
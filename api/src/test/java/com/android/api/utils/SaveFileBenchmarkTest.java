@@ -0,0 +1,107 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.android.api.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SaveFileBenchmarkTest {
+
+    private static final int SIZE = 32 * 1024 * 1024;
+    private static final int RUNS = 5;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void saveFileIsNotSlowerThanByteArrayLoop() throws Exception {
+        final byte[] content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        final File dir = mFolder.getRoot();
+
+        long saveFileNanos = Long.MAX_VALUE;
+        long loopNanos = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            Response response = newResponse(content);
+            long start = System.nanoTime();
+            Utils.saveFile(response, dir.getPath(), "channel.bin");
+            saveFileNanos = Math.min(saveFileNanos, System.nanoTime() - start);
+
+            response = newResponse(content);
+            start = System.nanoTime();
+            copyWithByteArray(response, new File(dir, "loop.bin"));
+            loopNanos = Math.min(loopNanos, System.nanoTime() - start);
+        }
+        assertEquals(ByteString.of(content),
+                Okio.buffer(Okio.source(new File(dir, "channel.bin"))).readByteString());
+        // generous bound, disk timings on a shared machine are noisy
+        assertTrue("saveFile " + mbPerSecond(saveFileNanos) + " MB/s, 2 KB loop "
+                        + mbPerSecond(loopNanos) + " MB/s",
+                saveFileNanos < loopNanos * 2);
+    }
+
+    // the copy loop saveFile used before it went through okio
+    private static void copyWithByteArray(Response response, File file) throws Exception {
+        byte[] buf = new byte[2048];
+        InputStream is = response.body().byteStream();
+        OutputStream fos = new FileOutputStream(file);
+        try {
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                fos.write(buf, 0, len);
+            }
+            fos.flush();
+        } finally {
+            is.close();
+            fos.close();
+        }
+    }
+
+    private static Response newResponse(byte[] content) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost/file.bin").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/octet-stream"),
+                        content.length, new Buffer().write(content)))
+                .build();
+    }
+
+    private static long mbPerSecond(long nanos) {
+        return SIZE * 1000L / nanos;
+    }
+}